@@ -0,0 +1,63 @@
+package searchclient;
+
+/*
+    Bitstate hashing: a Bloom filter of a fixed number of bits, NUM_OF_HASHES bits per state are derived from
+    its Zobrist key by double hashing. A state is taken for visited if all its bits are set. The table never grows,
+    so the probability of pruning an unvisited state rises with the number of states, roughly
+    (1 - e^(-NUM_OF_HASHES * states / bits))^NUM_OF_HASHES.
+ */
+public class BitstateSet implements StateSet {
+
+    private static final int NUM_OF_HASHES = 3;
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final long[] bits;
+    private final long numOfBits;
+    private int size = 0;
+
+    /*
+        megabytes - size of the table, capped at the max array length (16 GB)
+     */
+    public BitstateSet(int megabytes) {
+        long numOfWords = (long) Math.max(1, megabytes) << 17;
+        this.bits = new long[(int) Math.min(numOfWords, MAX_ARRAY_LENGTH)];
+        this.numOfBits = (long) bits.length * Long.SIZE;
+    }
+
+    @Override
+    public boolean add(State state) {
+        long key = state.getKey();
+        long step = mix(key) | 1;
+        boolean added = false;
+        for (int i = 0; i < NUM_OF_HASHES; i++) {
+            long bit = Long.remainderUnsigned(key + i * step, numOfBits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                added = true;
+            }
+        }
+        if (added) {
+            size++;
+        }
+        return added;
+    }
+
+    /*
+        Number of the states taken for unvisited
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /*
+        Finalizer of SplitMix64, the second hash has to be independent of the first one
+     */
+    private static long mix(long key) {
+        key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+        return key ^ (key >>> 31);
+    }
+}
@@ -0,0 +1,119 @@
+package searchclient;
+
+import java.util.Arrays;
+
+/*
+    Connected components of the free cells (the same parts of the map as LevelMetadata.MAPSPLIT, but of the final walls).
+    A pair of cells has an entry in a per-pair table only if both cells are in the same component: each component
+    has a dense square block over its own cells and the blocks are kept one after another in a single flat array.
+    So the tables take the sum of the squared component sizes instead of the squared number of free cells,
+    and the pairs from different components are answered by the component check only.
+ */
+public class CellComponents {
+
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {0, -1}, {-1, 0}}; // Right, Down, Left, Up
+
+    /*
+     * Component of each free cell
+     */
+    private final int[] componentOf;
+    /*
+     * Index of each free cell among the cells of its component
+     */
+    private final int[] localIndex;
+    private final int[] componentSizes;
+    /*
+     * Start of the block of each component in the flat table
+     */
+    private final long[] blockOffsets;
+    private final long tableSize;
+
+    /*
+        cellIndex - free-cell index of each cell kept flat by (row * mapCols + col), -1 for walls
+        cellRows, cellCols - coordinates of each free cell
+     */
+    public CellComponents(int mapRows, int mapCols, int[] cellIndex, int[] cellRows, int[] cellCols) {
+        int numOfCells = cellRows.length;
+        componentOf = new int[numOfCells];
+        localIndex = new int[numOfCells];
+        Arrays.fill(componentOf, -1);
+
+        int numOfComponents = 0;
+        int[] queue = new int[numOfCells];
+        for (int cell = 0; cell < numOfCells; cell++) {
+            if (componentOf[cell] >= 0) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            componentOf[cell] = numOfComponents;
+            queue[tail++] = cell;
+            while (head < tail) {
+                int current = queue[head++];
+                for (int[] direction : DIRECTIONS) {
+                    int row = cellRows[current] + direction[0];
+                    int col = cellCols[current] + direction[1];
+                    if (row < 0 || row >= mapRows || col < 0 || col >= mapCols) {
+                        continue;
+                    }
+                    int adjCell = cellIndex[row * mapCols + col];
+                    if (adjCell >= 0 && componentOf[adjCell] < 0) {
+                        componentOf[adjCell] = numOfComponents;
+                        queue[tail++] = adjCell;
+                    }
+                }
+            }
+            numOfComponents++;
+        }
+
+        componentSizes = new int[numOfComponents];
+        for (int cell = 0; cell < numOfCells; cell++) {
+            localIndex[cell] = componentSizes[componentOf[cell]]++;
+        }
+        blockOffsets = new long[numOfComponents];
+        long offset = 0;
+        for (int component = 0; component < numOfComponents; component++) {
+            blockOffsets[component] = offset;
+            offset += (long) componentSizes[component] * componentSizes[component];
+        }
+        tableSize = offset;
+    }
+
+    /*
+        Returns the position of the pair in the flat table, -1 if the cells are not in the same component
+     */
+    public int getEntry(int startCell, int endCell) {
+        int component = componentOf[startCell];
+        if (component != componentOf[endCell]) {
+            return -1;
+        }
+        return (int) (blockOffsets[component] + (long) localIndex[startCell] * componentSizes[component] + localIndex[endCell]);
+    }
+
+    public boolean isConnected(int startCell, int endCell) {
+        return componentOf[startCell] == componentOf[endCell];
+    }
+
+    /*
+        Number of entries of a flat table over all components
+     */
+    public long getTableSize() {
+        return tableSize;
+    }
+
+    public int getComponent(int cell) {
+        return componentOf[cell];
+    }
+
+    public int getLocalIndex(int cell) {
+        return localIndex[cell];
+    }
+
+    public int getComponentSize(int component) {
+        return componentSizes[component];
+    }
+
+    public int getNumOfComponents() {
+        return componentSizes.length;
+    }
+}
@@ -0,0 +1,102 @@
+package searchclient;
+
+import java.util.Arrays;
+
+/*
+    Closed set of SearchUtils.aStarSearch(...) without an object per entry. The states are kept packed
+    (State.pack(...), the cell of each agent and the packed boxes) one after another in a growable int arena,
+    the table is open-addressing (linear probing) over their Zobrist keys. A lookup compares the 64-bit keys first
+    and the packed agents and boxes only if they match, so a key collision never drops a state.
+
+    All the states of a search have the same number of agents and boxes, so every entry takes the same number
+    of ints (the size of the first added state) and the arena offset of entry i is i * entrySize.
+
+    It is meant for the searches which don't keep their states alive (the delta-encoded nodes), otherwise the arena
+    is a second copy of them, see HashStateSet. The arena is a single array, it is full at MAX_ARRAY_LENGTH ints.
+ */
+public class ClosedSet implements StateSet {
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final float MAX_LOAD = 0.5f;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    /*
+     * Entry index + 1 by slot, 0 for the empty slots
+     */
+    private int[] entries = new int[INITIAL_CAPACITY];
+    private int[] arena = new int[0];
+    private int entrySize = -1;
+    private int size = 0;
+
+    @Override
+    public boolean add(State state) {
+        if (entrySize < 0) {
+            entrySize = state.getPackedSize();
+            arena = new int[Math.max(1, entrySize) * INITIAL_CAPACITY];
+        }
+        long key = state.getKey();
+        int mask = keys.length - 1;
+        int slot = getSlot(key, mask);
+        while (entries[slot] != 0) {
+            if (keys[slot] == key && state.matchesPacked(arena, getOffset(entries[slot] - 1))) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        long end = (long) (size + 1) * entrySize;
+        if (end > arena.length) {
+            if (end > MAX_ARRAY_LENGTH) {
+                throw new IllegalStateException(String.format("Closed set full: %d states of %d ints", size, entrySize));
+            }
+            arena = Arrays.copyOf(arena, (int) Math.min(MAX_ARRAY_LENGTH, 2L * arena.length));
+        }
+        state.pack(arena, getOffset(size));
+        keys[slot] = key;
+        entries[slot] = ++size;
+        if (size > keys.length * MAX_LOAD) {
+            grow();
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        if (keys.length == MAX_CAPACITY) {
+            throw new IllegalStateException(String.format("Closed set full: %d states", size));
+        }
+        long[] oldKeys = keys;
+        int[] oldEntries = entries;
+        keys = new long[oldKeys.length * 2];
+        entries = new int[oldEntries.length * 2];
+        int mask = keys.length - 1;
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            if (oldEntries[oldSlot] == 0) {
+                continue;
+            }
+            int slot = getSlot(oldKeys[oldSlot], mask);
+            while (entries[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[oldSlot];
+            entries[slot] = oldEntries[oldSlot];
+        }
+    }
+
+    private int getOffset(int entry) {
+        return (int) ((long) entry * entrySize);
+    }
+
+    /*
+        The low bits of the Zobrist keys are already uniform, the high bits are mixed in anyway
+     */
+    private static int getSlot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
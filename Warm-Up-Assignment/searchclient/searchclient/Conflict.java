@@ -105,20 +105,19 @@ public class Conflict {
             swapForTwoMoves(postConflictState, initialAgentCoords, finalAgentCoords);
         }
 
-        postConflictState.agentRows[agent] = agentRow;
-        postConflictState.agentCols[agent] = agentCol;
+        postConflictState.moveAgent(agent, agentRow, agentCol);
         obstacleArea.remove(finalAgentCoords);
 
         if (initialBoxCoords != null) {
             if (!(lastOneMove && lastAction.type == ActionType.Pull)) {
-                postConflictState.boxes[initialBoxCoords.row][initialBoxCoords.col] = 0;
+                postConflictState.setBox(initialBoxCoords.row, initialBoxCoords.col, (char) 0);
             }
 
             if (lastTwoMoves) {
                 swapForTwoMoves(postConflictState, initialBoxCoords, finalBoxCoords);
             }
 
-            postConflictState.boxes[finalBoxCoords.row][finalBoxCoords.col] = conflictState.boxes[initialBoxCoords.row][initialBoxCoords.col];
+            postConflictState.setBox(finalBoxCoords.row, finalBoxCoords.col, conflictState.boxAt(initialBoxCoords.row, initialBoxCoords.col));
             obstacleArea.remove(finalBoxCoords);
         }
 
@@ -140,55 +139,51 @@ public class Conflict {
 
     private void swapForOneMove(State postConflictState, Action lastAction) {
         if (lastAction.type == ActionType.Move) {
-            char boxOnCell = conflictState.boxes[finalAgentCoords.row][finalAgentCoords.col];
+            char boxOnCell = conflictState.boxAt(finalAgentCoords.row, finalAgentCoords.col);
             char agentOnCellChar = StateUtils.agentAt(conflictState, finalAgentCoords.row, finalAgentCoords.col);
 
             if (StateUtils.isBox(boxOnCell)) {
-                postConflictState.boxes[finalAgentCoords.row][finalAgentCoords.col] = 0;
-                postConflictState.boxes[initialAgentCoords.row][initialAgentCoords.col] = boxOnCell;
+                postConflictState.setBox(finalAgentCoords.row, finalAgentCoords.col, (char) 0);
+                postConflictState.setBox(initialAgentCoords.row, initialAgentCoords.col, boxOnCell);
             } else if (StateUtils.isAgent(agentOnCellChar)) {
                 int agentOnCell1Int = StateUtils.agentCharToInt(agentOnCellChar);
-                postConflictState.agentRows[agentOnCell1Int] = initialAgentCoords.row;
-                postConflictState.agentCols[agentOnCell1Int] = initialAgentCoords.col;
+                postConflictState.moveAgent(agentOnCell1Int, initialAgentCoords.row, initialAgentCoords.col);
             }
         } else if (lastAction.type == ActionType.Pull) {
-            char boxOnCell = conflictState.boxes[finalAgentCoords.row][finalAgentCoords.col];
+            char boxOnCell = conflictState.boxAt(finalAgentCoords.row, finalAgentCoords.col);
             char agentOnCellChar = StateUtils.agentAt(conflictState, finalAgentCoords.row, finalAgentCoords.col);
 
             if (StateUtils.isBox(boxOnCell)) {
-                postConflictState.boxes[finalAgentCoords.row][finalAgentCoords.col] = 0;
-                postConflictState.boxes[initialBoxCoords.row][initialBoxCoords.col] = boxOnCell;
+                postConflictState.setBox(finalAgentCoords.row, finalAgentCoords.col, (char) 0);
+                postConflictState.setBox(initialBoxCoords.row, initialBoxCoords.col, boxOnCell);
             } else if (StateUtils.isAgent(agentOnCellChar)) {
                 int agentOnCell1Int = StateUtils.agentCharToInt(agentOnCellChar);
-                postConflictState.agentRows[agentOnCell1Int] = initialBoxCoords.row;
-                postConflictState.agentCols[agentOnCell1Int] = initialBoxCoords.col;
+                postConflictState.moveAgent(agentOnCell1Int, initialBoxCoords.row, initialBoxCoords.col);
             }
         } else if (lastAction.type == ActionType.Push) {
-            char boxOnCell = conflictState.boxes[finalBoxCoords.row][finalBoxCoords.col];
+            char boxOnCell = conflictState.boxAt(finalBoxCoords.row, finalBoxCoords.col);
             char agentOnCellChar = StateUtils.agentAt(conflictState, finalBoxCoords.row, finalBoxCoords.col);
 
             if (StateUtils.isBox(boxOnCell)) {
-                postConflictState.boxes[finalBoxCoords.row][finalBoxCoords.col] = 0;
-                postConflictState.boxes[initialAgentCoords.row][initialAgentCoords.col] = boxOnCell;
+                postConflictState.setBox(finalBoxCoords.row, finalBoxCoords.col, (char) 0);
+                postConflictState.setBox(initialAgentCoords.row, initialAgentCoords.col, boxOnCell);
             } else if (StateUtils.isAgent(agentOnCellChar)) {
                 int agentOnCell1Int = StateUtils.agentCharToInt(agentOnCellChar);
-                postConflictState.agentRows[agentOnCell1Int] = initialAgentCoords.row;
-                postConflictState.agentCols[agentOnCell1Int] = initialAgentCoords.col;
+                postConflictState.moveAgent(agentOnCell1Int, initialAgentCoords.row, initialAgentCoords.col);
             }
         }
     }
 
     private void swapForTwoMoves(State postConflictState, Coordinates initialCoords, Coordinates finalCoords) {
-        char boxOnCell = conflictState.boxes[finalCoords.row][finalCoords.col];
+        char boxOnCell = conflictState.boxAt(finalCoords.row, finalCoords.col);
         char agentOnCellChar = StateUtils.agentAt(conflictState, finalCoords.row, finalCoords.col);
         if (StateUtils.isBox(boxOnCell)) {
-            postConflictState.boxes[finalCoords.row][finalCoords.col] = 0;
-            postConflictState.boxes[initialCoords.row][initialCoords.col] = boxOnCell;
+            postConflictState.setBox(finalCoords.row, finalCoords.col, (char) 0);
+            postConflictState.setBox(initialCoords.row, initialCoords.col, boxOnCell);
         }
         if (StateUtils.isAgent(agentOnCellChar)) {
             int agentOnCell1Int = StateUtils.agentCharToInt(agentOnCellChar);
-            postConflictState.agentRows[agentOnCell1Int] = initialCoords.row;
-            postConflictState.agentCols[agentOnCell1Int] = initialCoords.col;
+            postConflictState.moveAgent(agentOnCell1Int, initialCoords.row, initialCoords.col);
         }
     }
 }
@@ -0,0 +1,84 @@
+package searchclient;
+
+/*
+    Backends of the distances and paths computed by MapStructurePreprocessor, from the fastest to the smallest one.
+    Unless one is set by the command line options (LevelMetadata.DISTANCE_ENGINE), select(...) picks the fastest
+    one whose estimated footprint fits into a part of the max heap (-Xmx), the rest is left for the search.
+ */
+public enum DistanceEngine {
+    /*
+     * DistanceTable with the real distances and NextCellTable with the first moves of the shortest paths
+     */
+    FULL,
+    /*
+     * DistanceTable only, the next cell of a path is the first neighbour (in LevelMetadata.NEXT_CELL_ORDER)
+     * which is one step closer to the end cell. At most 4 distance lookups per step instead of a single one.
+     */
+    GRADIENT,
+    /*
+     * LazyDistanceStore: the distance maps of the goals are computed up front, the other ones on demand
+     * and kept in a bounded cache. The paths are derived from the distances like in GRADIENT.
+     */
+    LAZY,
+    /*
+     * LAZY wrapped by LandmarkDistanceStore, the heuristics use the landmark lower bounds
+     */
+    LANDMARKS,
+    /*
+     * LAZY with the distances between different rooms and corridors answered by RegionGraph. It is never selected
+     * automatically, its footprint depends on the number of entrances between the regions.
+     */
+    REGIONS;
+
+    /*
+     * Part of the max heap that can be taken by the preprocessing
+     */
+    private static final double HEAP_FRACTION = 0.5;
+    /*
+     * Above this number of free cells the heuristics use the landmark bounds instead of BFS on a cache miss
+     */
+    private static final int MAX_LAZY_CELLS = 100_000;
+
+    public boolean isLazy() {
+        return this == LAZY || this == LANDMARKS || this == REGIONS;
+    }
+
+    public boolean storesPaths() {
+        return this == FULL;
+    }
+
+    /*
+        Estimated memory in bytes taken by the distances and paths of this engine (without the region graph)
+     */
+    public long estimateFootprint(CellComponents components, int numOfCells, int numOfGoals, int numOfLandmarks) {
+        long tableSize = components.getTableSize();
+        long mapSize = 4L * numOfCells;
+        switch (this) {
+            case FULL:
+                return 2 * tableSize + (long) Long.BYTES * NextCellTable.getNumOfWords(components);
+            case GRADIENT:
+                return 2 * tableSize;
+            case LAZY:
+            case REGIONS:
+                return numOfGoals * mapSize + LazyDistanceStore.getCapacity(numOfCells) * (mapSize + 16);
+            default:
+                return LAZY.estimateFootprint(components, numOfCells, numOfGoals, numOfLandmarks)
+                        + numOfLandmarks * mapSize;
+        }
+    }
+
+    /*
+        Returns the fastest engine that fits into the heap budget
+     */
+    public static DistanceEngine select(CellComponents components, int numOfCells, int numOfGoals, int numOfLandmarks) {
+        long budget = (long) (Memory.max() * 1024 * 1024 * HEAP_FRACTION);
+        boolean tableFits = components.getTableSize() <= (long) DistanceTable.MAX_COMPONENT_SIZE * DistanceTable.MAX_COMPONENT_SIZE;
+        if (tableFits && FULL.estimateFootprint(components, numOfCells, numOfGoals, numOfLandmarks) <= budget) {
+            return FULL;
+        }
+        if (tableFits && GRADIENT.estimateFootprint(components, numOfCells, numOfGoals, numOfLandmarks) <= budget) {
+            return GRADIENT;
+        }
+        return numOfCells <= MAX_LAZY_CELLS ? LAZY : LANDMARKS;
+    }
+}
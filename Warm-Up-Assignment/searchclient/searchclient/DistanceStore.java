@@ -0,0 +1,22 @@
+package searchclient;
+
+/*
+    Source of the real distances between free cells, used by LevelMetadata.getDistance(...).
+    Cells are addressed by their free-cell index (see LevelMetadata.getCellIndex(...)).
+ */
+public interface DistanceStore {
+
+    /*
+        Returns the real distance between two free cells, or the unreachable distance (LevelMetadata.MAP_AREA)
+        if they are not connected.
+     */
+    int getDistance(int startCell, int endCell);
+
+    /*
+        Returns a lower bound of the real distance between two free cells, which is cheaper to compute.
+        It is meant for the heuristics, the exact stores return the real distance.
+     */
+    default int getDistanceLowerBound(int startCell, int endCell) {
+        return getDistance(startCell, endCell);
+    }
+}
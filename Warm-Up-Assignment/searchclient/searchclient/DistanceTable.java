@@ -0,0 +1,65 @@
+package searchclient;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/*
+    Real distances between every pair of connected free (non-wall) cells, persisted in a single flat array.
+    Cells are addressed by their free-cell index (see LevelMetadata.getCellIndex(...)), so walls don't take
+    any space and there is no array object per row.
+    E.g. getDistance(2, 5) = 12 means that the real distance between the free cells 2 and 5 is 12.
+
+    The array is partitioned by the connected components of the map (see CellComponents). Cells of different
+    components are never connected, so such pairs have no entry and are answered by the component check.
+
+    Distances are stored as char (unsigned 16 bits) entries. The diameter of the map is always lower than the number
+    of free cells and the flat array limits the size of a component to MAX_COMPONENT_SIZE, so char is always enough.
+ */
+public class DistanceTable implements DistanceStore {
+
+    /*
+     * MAX_COMPONENT_SIZE^2 is the biggest square, which still fits into a single java array
+     */
+    public static final int MAX_COMPONENT_SIZE = 46340;
+    private static final char UNREACHABLE = Character.MAX_VALUE;
+
+    private final CellComponents components;
+    private final int unreachableDistance;
+    private final char[] distances;
+
+    /*
+        unreachableDistance is returned by get(...) for the pairs of cells that are not connected,
+        LevelMetadata uses MAP_AREA for that
+     */
+    public DistanceTable(CellComponents components, int unreachableDistance) {
+        if (components.getTableSize() > (long) MAX_COMPONENT_SIZE * MAX_COMPONENT_SIZE) {
+            throw new IllegalArgumentException(String.format("Too many connected free cells for the distance table: %d entries",
+                    components.getTableSize()));
+        }
+        this.components = components;
+        this.unreachableDistance = unreachableDistance;
+        this.distances = new char[(int) components.getTableSize()];
+        Arrays.fill(distances, UNREACHABLE);
+    }
+
+    @Override
+    public int getDistance(int startCell, int endCell) {
+        int entry = components.getEntry(startCell, endCell);
+        if (entry < 0) {
+            return unreachableDistance;
+        }
+        char distance = distances[entry];
+        return distance == UNREACHABLE ? unreachableDistance : distance;
+    }
+
+    public void set(int startCell, int endCell, int distance) {
+        distances[components.getEntry(startCell, endCell)] = (char) distance;
+    }
+
+    /*
+        Copies all entries to the buffer, in the layout used by MappedDistanceTable
+     */
+    public void writeTo(CharBuffer buffer) {
+        buffer.put(distances);
+    }
+}
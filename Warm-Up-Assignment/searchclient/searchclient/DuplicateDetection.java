@@ -0,0 +1,37 @@
+package searchclient;
+
+/*
+    Duplicate detection modes of the conflict searches (SearchUtils.DUPLICATE_DETECTION), from the exact one
+    to the smallest one. The inexact modes may prune a state that has never been visited when two states share
+    a fingerprint, the search can then miss a solution or return a longer one, but many more states fit into memory.
+ */
+public enum DuplicateDetection {
+    /*
+     * HashStateSet if the search keeps the states alive anyway, otherwise ClosedSet: the Zobrist keys and
+     * the packed states, a match of the keys is confirmed by the states
+     */
+    EXACT,
+    /*
+     * FingerprintSet: only the 64-bit Zobrist keys (hash compaction), 8 bytes per slot
+     */
+    FINGERPRINTS,
+    /*
+     * BitstateSet: a Bloom filter of SearchUtils.BITSTATE_MEGABYTES, a few bits per state whatever their number
+     */
+    BITSTATE;
+
+    /*
+        statesRetained - the search keeps every added state alive (the plain search, not the delta-encoded
+        or off-heap nodes), so the exact set doesn't need a copy of them
+     */
+    public StateSet create(boolean statesRetained) {
+        switch (this) {
+            case FINGERPRINTS:
+                return new FingerprintSet();
+            case BITSTATE:
+                return new BitstateSet(SearchUtils.BITSTATE_MEGABYTES);
+            default:
+                return statesRetained ? new HashStateSet() : new ClosedSet();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package searchclient;
+
+/*
+    Hash compaction: an open-addressing table (linear probing) of the 64-bit Zobrist keys only. Two different states
+    with the same key are taken for the same one, with 64-bit keys that is very unlikely even for billions of states.
+    The key 0 marks the empty slots, a state with the key 0 is stored as 1.
+ */
+public class FingerprintSet implements StateSet {
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final float MAX_LOAD = 0.75f;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    @Override
+    public boolean add(State state) {
+        long key = state.getKey() == 0 ? 1 : state.getKey();
+        int mask = keys.length - 1;
+        int slot = getSlot(key, mask);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size > keys.length * MAX_LOAD) {
+            grow();
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        keys = new long[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (long key : oldKeys) {
+            if (key == 0) {
+                continue;
+            }
+            int slot = getSlot(key, mask);
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+        }
+    }
+
+    private static int getSlot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
@@ -86,24 +86,28 @@ class FrontierDFS implements Frontier
 class FrontierBestFirst implements Frontier
 {
     private Heuristic heuristic;
-    private final PriorityQueue<State> queue;
+    /*
+     * The states with their f, evaluated once when they are added instead of in every comparison of the queue
+     */
+    private final PriorityQueue<Entry> queue;
 
     public FrontierBestFirst(Heuristic h)
     {
         this.heuristic = h;
-        queue = new PriorityQueue<>(65536, h);
+        queue = new PriorityQueue<>(65536, (e1, e2) -> e1.f - e2.f);
     }
 
     @Override
     public void add(State state)
     {
-        this.queue.add(state);
+        this.queue.add(new Entry(state, this.heuristic.f(state)));
     }
 
     @Override
     public State pop()
     {
-        return this.queue.poll();
+        Entry entry = this.queue.poll();
+        return entry == null ? null : entry.state;
     }
 
     @Override
@@ -123,4 +127,16 @@ class FrontierBestFirst implements Frontier
     {
         return String.format("best-first search using %s", this.heuristic.toString());
     }
+
+    private static class Entry
+    {
+        private final State state;
+        private final int f;
+
+        private Entry(State state, int f)
+        {
+            this.state = state;
+            this.f = f;
+        }
+    }
 }
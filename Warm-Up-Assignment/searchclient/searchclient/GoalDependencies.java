@@ -0,0 +1,141 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Dependencies between the box goals, "goal X must be filled before goal Y", derived from the goal clusters
+    of MapStructurePreprocessor.rankGoals(): in a dead end every goal depends on the next deeper goal, a box pushed
+    to a shallower goal first would close the way to the deeper ones. The edges always go deeper -> shallower,
+    so the graph is acyclic. A goal is blocked while any of its prerequisites isn't filled by its box.
+    The adjacent clusters add no dependencies, their ranks only say which goals are more enclosed and the greedy
+    subgoal selection would wait forever for a goal that cannot be filled yet.
+
+    The goals are also given a topological level: 0 for the goals without prerequisites, otherwise one more
+    than the highest level of their prerequisites.
+ */
+public class GoalDependencies {
+
+    private final int mapCols;
+    /*
+     * Index of the box goal of each cell, kept flat by (row * mapCols + col), -1 for the other cells
+     */
+    private final int[] goalIndex;
+    private final int[] goalRows;
+    private final int[] goalCols;
+    private final List<List<Integer>> prerequisiteLists = new ArrayList<>();
+    private int[][] prerequisites;
+    private int[] levels;
+
+    public GoalDependencies(char[][] goals) {
+        int mapRows = goals.length;
+        this.mapCols = goals[0].length;
+        this.goalIndex = new int[mapRows * mapCols];
+        Arrays.fill(goalIndex, -1);
+        int numOfGoals = 0;
+        for (int row = 0; row < mapRows; row++) {
+            for (int col = 0; col < mapCols; col++) {
+                if (StateUtils.isBox(goals[row][col])) {
+                    goalIndex[row * mapCols + col] = numOfGoals++;
+                }
+            }
+        }
+        this.goalRows = new int[numOfGoals];
+        this.goalCols = new int[numOfGoals];
+        for (int cell = 0; cell < goalIndex.length; cell++) {
+            int goal = goalIndex[cell];
+            if (goal >= 0) {
+                goalRows[goal] = cell / mapCols;
+                goalCols[goal] = cell % mapCols;
+                prerequisiteLists.add(new ArrayList<>());
+            }
+        }
+    }
+
+    /*
+        Goal (beforeRow, beforeCol) has to be filled before goal (afterRow, afterCol). Ignored unless both are box goals.
+        Has to be called before build().
+     */
+    public void addDependency(int beforeRow, int beforeCol, int afterRow, int afterCol) {
+        int before = getGoal(beforeRow, beforeCol);
+        int after = getGoal(afterRow, afterCol);
+        if (before < 0 || after < 0 || before == after || prerequisiteLists.get(after).contains(before)) {
+            return;
+        }
+        prerequisiteLists.get(after).add(before);
+    }
+
+    /*
+        Freezes the dependencies and computes the topological order (Kahn's algorithm)
+     */
+    public void build() {
+        int numOfGoals = goalRows.length;
+        prerequisites = new int[numOfGoals][];
+        int[][] dependants = new int[numOfGoals][0];
+        int[] numOfPending = new int[numOfGoals];
+        for (int goal = 0; goal < numOfGoals; goal++) {
+            List<Integer> list = prerequisiteLists.get(goal);
+            prerequisites[goal] = new int[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                int before = list.get(i);
+                prerequisites[goal][i] = before;
+                dependants[before] = Arrays.copyOf(dependants[before], dependants[before].length + 1);
+                dependants[before][dependants[before].length - 1] = goal;
+            }
+            numOfPending[goal] = list.size();
+        }
+
+        levels = new int[numOfGoals];
+        int[] order = new int[numOfGoals];
+        int head = 0;
+        int tail = 0;
+        for (int goal = 0; goal < numOfGoals; goal++) {
+            if (numOfPending[goal] == 0) {
+                order[tail++] = goal;
+            }
+        }
+        while (head < tail) {
+            int goal = order[head++];
+            for (int dependant : dependants[goal]) {
+                levels[dependant] = Math.max(levels[dependant], levels[goal] + 1);
+                if (--numOfPending[dependant] == 0) {
+                    order[tail++] = dependant;
+                }
+            }
+        }
+        if (tail != numOfGoals) {
+            throw new IllegalStateException("Cyclic goal dependencies");
+        }
+    }
+
+    /*
+        Returns true if any goal which has to be filled before the goal (row, col) isn't filled in the state
+     */
+    public boolean isBlocked(State state, int row, int col) {
+        int goal = getGoal(row, col);
+        if (goal < 0) {
+            return false;
+        }
+        for (int before : prerequisites[goal]) {
+            int beforeRow = goalRows[before];
+            int beforeCol = goalCols[before];
+            if (StateUtils.boxAt(state, beforeRow, beforeCol) != State.GOALS[beforeRow][beforeCol]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+        Returns the topological level of the goal (row, col), 0 for the cells which aren't box goals
+     */
+    public int getLevel(int row, int col) {
+        int goal = getGoal(row, col);
+        return goal < 0 ? 0 : levels[goal];
+    }
+
+    private int getGoal(int row, int col) {
+        return goalIndex[row * mapCols + col];
+    }
+}
@@ -14,7 +14,8 @@ public class GraphSearch {
     public static Action[][] search(State initialState, Frontier frontier) {
         // Preprocessing of the map
         State state=LevelMetadata.initSplit(initialState); //Takes up to 100MB
-        System.err.format("[Preprocessing] Time: %3.3f s Memory %s\n", (System.nanoTime() - startTime) / 1_000_000_000d, Memory.stringRep());
+        System.err.format("[Preprocessing] Time: %3.3f s Memory %s %s\n", (System.nanoTime() - startTime) / 1_000_000_000d,
+                Memory.stringRep(), LevelMetadata.DISTANCE_ENGINE_SUMMARY);
         Action[][] plan = new Action[0][initialState.numOfAgents];
         //State state = initialState;
 
@@ -0,0 +1,23 @@
+package searchclient;
+
+import java.util.HashSet;
+
+/*
+    Exact duplicate detection of the searches which keep their states alive anyway (in the frontier and through
+    the parent links of the children), like the plain SearchUtils.aStarSearch(...). A HashSet of the states then
+    only costs its entries, a packed copy of each state (ClosedSet) would double the memory of the closed states.
+ */
+public class HashStateSet implements StateSet {
+
+    private final HashSet<State> states = new HashSet<>();
+
+    @Override
+    public boolean add(State state) {
+        return states.add(state);
+    }
+
+    @Override
+    public int size() {
+        return states.size();
+    }
+}
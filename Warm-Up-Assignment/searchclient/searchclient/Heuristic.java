@@ -35,9 +35,21 @@ class HeuristicAStar
     private static Conflict conflictObject;
 
     private HeuristicFunctionUtils heuristicFunction = new HeuristicFunctionUtils();
+    /*
+     * Add the distances of all the agents to their cells in the goal state. The operator decomposition needs it,
+     * the other terms don't tell apart the partial joint actions of the other agents than the prioritized one.
+     */
+    private final boolean allAgentsDistance;
+
     public HeuristicAStar(State initialState)
+    {
+        this(initialState, false);
+    }
+
+    public HeuristicAStar(State initialState, boolean allAgentsDistance)
     {
         super(initialState);
+        this.allAgentsDistance = allAgentsDistance;
     }
     public static void setGoalStateAndAgentAndConflict(State goal, int agent, Conflict conflict) {
         goalState = goal;
@@ -60,7 +72,11 @@ class HeuristicAStar
         int numberOfObstacles = heuristicFunction.getNumberOfObstaclesOnPath(initialState, conflictObject.obstacleArea, prioritizedAgent, conflictObject);
         // System.err.format("numberOfObstacles " + numberOfObstacles);
         
-        return agentGoalDistance + numberOfUnsatisfiedGoals + numberOfObstacles;
+        int h = agentGoalDistance + numberOfUnsatisfiedGoals + numberOfObstacles;
+        if (allAgentsDistance) {
+            h += heuristicFunction.getAllAgentsGoalDistance(initialState, goalState);
+        }
+        return h;
     }
 
     @Override
@@ -31,7 +31,22 @@ public class HeuristicFunctionUtils {
         int goalRow = goalState.agentRows[agent];
         int goalCol = goalState.agentCols[agent];
 
-        return LevelMetadata.getDistance(agentRow, agentCol, goalRow, goalCol);
+        return LevelMetadata.getDistanceLowerBound(agentRow, agentCol, goalRow, goalCol);
+    }
+
+    /*
+        Sum of the lower bounds of the distances of all the agents to their cells in the goal state.
+        The unassigned agents of an intermediate state of the operator decomposition (State.getDecomposedStates())
+        still make their move of this joint action, so their bound is one less.
+     */
+    public int getAllAgentsGoalDistance(State state, State goalState) {
+        int assignedAgents = state.isIntermediate() ? state.getAssignedAgents() : state.numOfAgents;
+        int distance = 0;
+        for (int agent = 0; agent < state.numOfAgents; agent++) {
+            int agentDistance = getAgentGoalDistance(state, goalState, agent);
+            distance += agent < assignedAgents ? agentDistance : Math.max(0, agentDistance - 1);
+        }
+        return distance;
     }
 
     public int getNumberOfUnsatisfiedGoals(State state) {
@@ -59,7 +74,7 @@ public class HeuristicFunctionUtils {
             for (int j=0; j<boxCoordinates.length; j += 2) {
                 int boxRow = boxCoordinates[j];
                 int boxCol = boxCoordinates[j+1];
-                if (state.boxes[boxRow][boxCol] == box) {
+                if (state.boxAt(boxRow, boxCol) == box) {
                     satisfiedGoals++;
                 }
             }
@@ -76,14 +91,9 @@ public class HeuristicFunctionUtils {
 
         int boxesDistance = 0;
 
-        for (int boxRow = 0; boxRow < state.boxes.length; boxRow++) {
-            for (int boxCol = 0; boxCol < state.boxes[boxRow].length; boxCol++) {
-                char box = state.boxes[boxRow][boxCol];
-                if (box == 0) {
-                    continue;
-                }
-                boxesDistance += getMinimumDistance(StateUtils.boxCharToInt(box), boxRow, boxCol, LevelMetadata.BOX_GOALS_COORDINATES);
-            }
+        for (int i = 0; i < state.getNumOfBoxes(); i++) {
+            boxesDistance += getMinimumDistance(StateUtils.boxCharToInt(state.getBox(i)), state.getBoxRow(i), state.getBoxCol(i),
+                    LevelMetadata.BOX_GOALS_COORDINATES);
         }
 
         return boxesDistance;
@@ -97,7 +107,7 @@ public class HeuristicFunctionUtils {
             if (goalRow < 0 || goalCol < 0) {
                 break;
             }
-            int distance = LevelMetadata.getDistance(row, col, goalRow, goalCol);
+            int distance = LevelMetadata.getDistanceLowerBound(row, col, goalRow, goalCol);
             minDistance = Math.min(minDistance, distance);
         }
         return minDistance;
@@ -122,7 +132,7 @@ public class HeuristicFunctionUtils {
                 int agentRow = state.agentRows[i];
                 int agentCol = state.agentCols[i];
 
-                int distance=LevelMetadata.getDistance(agentRow, agentCol, obstacleRow, obstacleCol);
+                int distance=LevelMetadata.getDistanceLowerBound(agentRow, agentCol, obstacleRow, obstacleCol);
 
                 if(chosenAgent == -1){ //first iteration
                     minDistance = distance;
@@ -152,7 +162,7 @@ public class HeuristicFunctionUtils {
                 int closestAgent = getClosestSameColorAgent(state,obstacleRow,obstacleCol, prioritizedAgent);        
                 int agentRow = state.agentRows[closestAgent];
                 int agentCol = state.agentCols[closestAgent];
-                int distance = LevelMetadata.getDistance(obstacleRow, obstacleCol, agentRow, agentCol);
+                int distance = LevelMetadata.getDistanceLowerBound(obstacleRow, obstacleCol, agentRow, agentCol);
                 sumOfDistances += distance;
             }
         }
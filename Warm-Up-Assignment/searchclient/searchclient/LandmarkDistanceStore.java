@@ -0,0 +1,86 @@
+package searchclient;
+
+import java.util.Arrays;
+
+/*
+    Landmark (ALT) distances for the maps which are too big even for the lazily computed distances.
+    The full distance maps of k landmarks, spread over the map by the farthest-point rule, are kept for the whole run.
+    By the triangle inequality |d(l, a) - d(l, b)| <= d(a, b) for every landmark l, so the biggest of these differences
+    is an admissible lower bound of the real distance, computed in O(k) without any BFS.
+
+    getDistance(...) stays exact, it is served by the lazy store (pinned goal maps or its cache).
+    getDistanceLowerBound(...) is exact too if one of the cells already has a distance map in the lazy store,
+    otherwise it returns the landmark bound. Memory is O(k * cells) plus the bounded cache of the lazy store.
+ */
+public class LandmarkDistanceStore implements DistanceStore {
+
+    private final LazyDistanceStore exactDistances;
+    private final int unreachableDistance;
+    private final int[] landmarks;
+    private final int[][] landmarkMaps;
+
+    /*
+        numOfLandmarks - number of landmarks k, lower for the maps with less free cells
+     */
+    public LandmarkDistanceStore(LazyDistanceStore exactDistances, int numOfCells, int numOfLandmarks,
+                                 int unreachableDistance) {
+        this.exactDistances = exactDistances;
+        this.unreachableDistance = unreachableDistance;
+        int k = Math.min(numOfLandmarks, numOfCells);
+        this.landmarks = new int[k];
+        this.landmarkMaps = new int[k][];
+
+        // farthest-point rule: the next landmark is the cell farthest from all chosen ones, cells not reached
+        // by any landmark yet (other components) are the farthest, so every component gets a landmark first
+        int[] minDistances = new int[numOfCells];
+        Arrays.fill(minDistances, Integer.MAX_VALUE);
+        int nextLandmark = 0;
+        for (int i = 0; i < k; i++) {
+            landmarks[i] = nextLandmark;
+            landmarkMaps[i] = exactDistances.pin(nextLandmark);
+
+            int farthestDistance = -1;
+            for (int cell = 0; cell < numOfCells; cell++) {
+                int distance = landmarkMaps[i][cell];
+                if (distance != LazyDistanceStore.UNREACHABLE && distance < minDistances[cell]) {
+                    minDistances[cell] = distance;
+                }
+                if (minDistances[cell] > farthestDistance) {
+                    farthestDistance = minDistances[cell];
+                    nextLandmark = cell;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getDistance(int startCell, int endCell) {
+        return exactDistances.getDistance(startCell, endCell);
+    }
+
+    @Override
+    public int getDistanceLowerBound(int startCell, int endCell) {
+        if (exactDistances.isCached(startCell) || exactDistances.isCached(endCell)) {
+            return exactDistances.getDistance(startCell, endCell);
+        }
+
+        int bound = 0;
+        for (int[] landmarkMap : landmarkMaps) {
+            int startDistance = landmarkMap[startCell];
+            int endDistance = landmarkMap[endCell];
+            if (startDistance == LazyDistanceStore.UNREACHABLE && endDistance == LazyDistanceStore.UNREACHABLE) {
+                continue;
+            }
+            if (startDistance == LazyDistanceStore.UNREACHABLE || endDistance == LazyDistanceStore.UNREACHABLE) {
+                // only one of the cells is in the component of the landmark
+                return unreachableDistance;
+            }
+            bound = Math.max(bound, Math.abs(startDistance - endDistance));
+        }
+        return bound;
+    }
+
+    public int getNumOfLandmarks() {
+        return landmarks.length;
+    }
+}
@@ -0,0 +1,174 @@
+package searchclient;
+
+import java.util.Arrays;
+
+/*
+    Computes the distances from a free cell with a single BFS the first time they are requested and keeps
+    such distance maps in a bounded cache. When the cache is full the least recently used map is dropped
+    and its array is reused for the new one.
+
+    Only a small part of the cells is ever queried, so the startup is almost instant and the memory is capped
+    by the cache capacity, which is sized from the max heap (-Xmx).
+    Distances are symmetric, so a query is served from the cached map of the end cell as well. Otherwise the map
+    of the start cell is computed.
+
+    Maps of the cells queried all the time (the goals) can be pinned, they are computed once and never evicted.
+    Then the distance to a goal costs a single array read and only the rare other pairs go through the cache.
+
+    The maps are int arrays: this store backs the engines of the big maps, whose components can be longer than
+    the 65535 steps a char could hold.
+ */
+public class LazyDistanceStore implements DistanceStore {
+
+    /*
+     * Part of the max heap that can be used by the cached distance maps
+     */
+    private static final double HEAP_FRACTION = 0.25;
+    private static final int MIN_CAPACITY = 8;
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {0, -1}, {-1, 0}}; // Right, Down, Left, Up
+
+    private final int mapRows;
+    private final int mapCols;
+    private final int[] cellIndex;
+    private final int[] cellRows;
+    private final int[] cellCols;
+    private final int numOfCells;
+    private final int unreachableDistance;
+
+    private final int capacity;
+    /*
+     * Distance map of each source cell, null if it is not cached
+     */
+    private final int[][] maps;
+    private final long[] lastUsed;
+    private final int[] cachedCells;
+    private int numOfCachedCells = 0;
+    private long clock = 0;
+    private final int[] queue;
+
+    /*
+        cellIndex - free-cell index of each cell kept flat by (row * mapCols + col), -1 for walls
+        cellRows, cellCols - coordinates of each free cell
+     */
+    public LazyDistanceStore(int mapRows, int mapCols, int[] cellIndex, int[] cellRows, int[] cellCols,
+                             int unreachableDistance) {
+        this.mapRows = mapRows;
+        this.mapCols = mapCols;
+        this.cellIndex = cellIndex;
+        this.cellRows = cellRows;
+        this.cellCols = cellCols;
+        this.numOfCells = cellRows.length;
+        this.unreachableDistance = unreachableDistance;
+
+        this.capacity = getCapacity(numOfCells);
+        this.maps = new int[numOfCells][];
+        this.lastUsed = new long[numOfCells];
+        this.cachedCells = new int[capacity];
+        this.queue = new int[numOfCells];
+    }
+
+    /*
+        Returns how many distance maps of the given number of cells fit into the heap budget
+     */
+    public static int getCapacity(int numOfCells) {
+        long budget = (long) (Memory.max() * 1024 * 1024 * HEAP_FRACTION);
+        long mapSize = 4L * numOfCells + 16;
+        return (int) Math.max(Math.min(MIN_CAPACITY, numOfCells), Math.min(numOfCells, budget / mapSize));
+    }
+
+    @Override
+    public int getDistance(int startCell, int endCell) {
+        int distance;
+        if (maps[startCell] != null) {
+            distance = use(startCell)[endCell];
+        } else if (maps[endCell] != null) {
+            distance = use(endCell)[startCell];
+        } else {
+            distance = compute(startCell)[endCell];
+        }
+        return distance == UNREACHABLE ? unreachableDistance : distance;
+    }
+
+    /*
+        Computes the map of the cell and keeps it until the end of the run (outside of the cache capacity).
+        It has to be called before the first query. Returns the map, UNREACHABLE for the cells that are not connected.
+     */
+    public int[] pin(int cell) {
+        if (maps[cell] == null) {
+            int[] map = new int[numOfCells];
+            bfs(cell, map);
+            maps[cell] = map;
+        }
+        return maps[cell];
+    }
+
+    /*
+        Returns true if the distances from the cell are available without a BFS (pinned or cached)
+     */
+    public boolean isCached(int cell) {
+        return maps[cell] != null;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private int[] use(int cell) {
+        lastUsed[cell] = ++clock;
+        return maps[cell];
+    }
+
+    private int[] compute(int sourceCell) {
+        int[] map = numOfCachedCells < capacity ? new int[numOfCells] : evictLeastRecentlyUsed();
+        bfs(sourceCell, map);
+
+        maps[sourceCell] = map;
+        lastUsed[sourceCell] = ++clock;
+        cachedCells[numOfCachedCells++] = sourceCell;
+        return map;
+    }
+
+    /*
+        Drops the least recently used map from the cache and returns its array for reuse
+     */
+    private int[] evictLeastRecentlyUsed() {
+        int oldest = 0;
+        for (int i = 1; i < numOfCachedCells; i++) {
+            if (lastUsed[cachedCells[i]] < lastUsed[cachedCells[oldest]]) {
+                oldest = i;
+            }
+        }
+
+        int oldestCell = cachedCells[oldest];
+        int[] map = maps[oldestCell];
+        maps[oldestCell] = null;
+        cachedCells[oldest] = cachedCells[--numOfCachedCells];
+        return map;
+    }
+
+    private void bfs(int sourceCell, int[] map) {
+        Arrays.fill(map, UNREACHABLE);
+        map[sourceCell] = 0;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = sourceCell;
+
+        while (head < tail) {
+            int cell = queue[head++];
+            int nextDistance = map[cell] + 1;
+            for (int[] direction : DIRECTIONS) {
+                int row = cellRows[cell] + direction[0];
+                int col = cellCols[cell] + direction[1];
+                if (row < 0 || row >= mapRows || col < 0 || col >= mapCols) {
+                    continue;
+                }
+                int adjCell = cellIndex[row * mapCols + col];
+                if (adjCell >= 0 && map[adjCell] == UNREACHABLE) {
+                    map[adjCell] = nextDistance;
+                    queue[tail++] = adjCell;
+                }
+            }
+        }
+    }
+}
@@ -52,6 +52,10 @@ public class LevelMetadata {
      * means that box 'B' has goals at coords (4,2) and (1,2).
      */
     public static int[][] BOX_GOALS_COORDINATES;
+    /*
+     * Goals which have to be filled before other goals, e.g. the deeper goals of a dead end
+     */
+    public static GoalDependencies GOAL_DEPENDENCIES;
     /*
      * Contains agent indexes for each color
      * E.g. AGENTS_PER_COLOR[Color.Blue.getValue()] = [1,3,5]
@@ -64,18 +68,45 @@ public class LevelMetadata {
      */
     public static char[][] BOXES_PER_COLOR;
     /*
-     * Contains real distances between two points e.g. DISTANCES[2][3][1][4] = 12
-     * It means that real distance between (2,3) and (1,4) is 12
+     * Free-cell index of each cell, kept flat by (row * MAP_COLS + col). Walls have index -1.
+     * E.g. CELL_INDEX[2 * MAP_COLS + 3] = 7 means that (2,3) is the free cell number 7
+     */
+    private static int[] CELL_INDEX;
+    /*
+     * Contains real distances between two free cells e.g. DISTANCES.getDistance(7, 9) = 12
+     * It means that real distance between the free cells 7 and 9 is 12. Use getDistance(...) to
+     * query it by coordinates.
+     * It is the DistanceTable, the LazyDistanceStore or the LandmarkDistanceStore depending on the DistanceEngine.
+     */
+    private static DistanceStore DISTANCES;
+    /*
+     * Backend of DISTANCES and NEXT_CELLS set by the command line options, null to select it by the size
+     * of the map and the max heap (see DistanceEngine.select(...))
+     */
+    public static DistanceEngine DISTANCE_ENGINE = null;
+    /*
+     * The engine used for the current level and its estimated footprint, printed with the preprocessing time
+     */
+    public static String DISTANCE_ENGINE_SUMMARY = "";
+    /*
+     * Number of landmarks of LandmarkDistanceStore (DistanceEngine.LANDMARKS), the heuristics
+     * then use the landmark lower bounds (see getDistanceLowerBound(...)) instead of the real distances.
      */
-    private static int[][][][] DISTANCES;
+    public static int LANDMARKS = 16;
     /*
-     * PATHS_ROW AND PATHS_COL together persist the coordinate of the next cell, which lead
-     * from one cell to the other e.g. PATHS_ROW[1][1][3][1] = 1 and PATHS_COL[1][1][3][1] = 2
+     * Number of threads computing the distances and paths from different start cells at the same time
+     */
+    public static int PREPROCESSING_THREADS = Runtime.getRuntime().availableProcessors();
+    /*
+     * Directory of the preprocessing cache (see PreprocessingCache), null if the cache is not used
+     */
+    public static String PREPROCESSING_CACHE_DIR = null;
+    /*
+     * NEXT_CELLS persists the direction of the next cell, which leads from one free cell to the other
+     * in 2 bits per pair e.g. NEXT_CELLS.getDirection(7, 9) = 0 (MoveE) for the cells 7 = (1, 1) and 9 = (3, 1)
      * means that if you want to get from (1, 1) to (3, 1) the next cell of the shortest path is (1, 2).
      * You can retrieve it using getNextCell(...) method.
      *
-     * It is separated into two 4D tables instead of 5D due to memory issues.
-     *
      * Real path from (x, y) to (z, w) can be retrieved by recursively using getNextCell(...)
      * E.g. get shortest path between (1, 1) and (3, 1)
      * [1, 2] = getNextCell(1, 1, 3, 1)
@@ -83,9 +114,13 @@ public class LevelMetadata {
      * [3, 2] = getNextCell(2, 2, 3, 1)
      * [3, 1] = getNextCell(3, 2, 3, 1)
      * The shortest path (1, 1) -> (1, 2) -> (2, 2) -> (3, 2) -> (3, 1)
+     *
+     * It is null unless DistanceEngine.FULL is used. Otherwise the next cell of the shortest path is recovered
+     * from DISTANCES instead, by choosing the neighbour that is one step closer to the end cell.
+     * Neighbours are checked in the order of NEXT_CELL_ORDER, so the chosen paths are always the same.
      */
-    private static int[][][][] PATHS_ROW;
-    private static int[][][][] PATHS_COL;
+    private static NextCellTable NEXT_CELLS;
+    private static final Action[] NEXT_CELL_ORDER = new Action[]{Action.MoveE, Action.MoveS, Action.MoveW, Action.MoveN};
     /*
     Coordinates of the cells that have 3 or 4 non-wall cells around.
     Example:
@@ -100,6 +135,11 @@ public class LevelMetadata {
     BRANCH_CELLS = [3, 1, 5, 1] -> cells (3, 1) and (5, 1) are branch cells
      */
     public static int[] BRANCH_CELLS;
+    /*
+     * DEAD_CELLS[box][cellIndex] - the box can never reach any of its goals from the cell, null for the boxes without
+     * goals. See MapStructurePreprocessor.getDeadCells()
+     */
+    private static boolean[][] DEAD_CELLS;
 
     /*
      * CORRIDORS is a 3D integer array representing a collection of corridors.
@@ -133,10 +173,7 @@ public class LevelMetadata {
         initGoals();
         initObjectsPerColor(initialState);
         MapStructurePreprocessor mapStructurePreprocessor = new MapStructurePreprocessor();
-        DISTANCES = mapStructurePreprocessor.getDistances();
-        PATHS_ROW = mapStructurePreprocessor.getPathsRow();
-        PATHS_COL = mapStructurePreprocessor.getPathsCol();
-        BRANCH_CELLS = mapStructurePreprocessor.getBranchCells();
+        setDistancesAndPaths(mapStructurePreprocessor);
         // CORRIDORS = mapStructurePreprocessor.getCorridors(State.WALLS);
     }
 
@@ -147,42 +184,28 @@ public class LevelMetadata {
 
         initGoals();
         initObjectsPerColor(initialState);
-        MapStructurePreprocessor mapStructurePreprocessor = new MapStructurePreprocessor();
-        DISTANCES = mapStructurePreprocessor.getDistances();
-        PATHS_ROW = mapStructurePreprocessor.getPathsRow();
-        PATHS_COL = mapStructurePreprocessor.getPathsCol();
-        BRANCH_CELLS = mapStructurePreprocessor.getBranchCells();
 
         // create splits & replace boxes by walls - 1st time
-        MAPSPLIT = mapStructurePreprocessor.getMapSplit(initialState);
-        initialState = mapStructurePreprocessor.replaceBoxWall(initialState);
+        // the splits depend only on the walls, so the distances and paths are computed once, with the final walls
+        MAPSPLIT = MapStructurePreprocessor.getMapSplit(initialState);
+        initialState = MapStructurePreprocessor.replaceBoxWall(initialState);
 
-        //reprocess paths and distances with the new walls
+        // create splits with the new walls & replace walls - 2nd time
         initObjectsPerColor(initialState);
-        MapStructurePreprocessor mapStructurePreprocessor2 = new MapStructurePreprocessor();
-        DISTANCES = mapStructurePreprocessor2.getDistances();
-        PATHS_ROW = mapStructurePreprocessor2.getPathsRow();
-        PATHS_COL = mapStructurePreprocessor2.getPathsCol();
-        BRANCH_CELLS = mapStructurePreprocessor2.getBranchCells();
+        MAPSPLIT = MapStructurePreprocessor.getMapSplit(initialState);
+        initialState = MapStructurePreprocessor.replaceBoxWall(initialState);
 
-        // create splits & replace walls - 2nd time
-        MAPSPLIT = mapStructurePreprocessor2.getMapSplit(initialState);
-        initialState = mapStructurePreprocessor2.replaceBoxWall(initialState);
-
-        //reprocess paths and distances with the new walls - again
+        //process paths and distances with the final walls
         initObjectsPerColor(initialState);
-        MapStructurePreprocessor mapStructurePreprocessor3 = new MapStructurePreprocessor();
-        DISTANCES = mapStructurePreprocessor3.getDistances();
-        PATHS_ROW = mapStructurePreprocessor3.getPathsRow();
-        PATHS_COL = mapStructurePreprocessor3.getPathsCol();
-        BRANCH_CELLS = mapStructurePreprocessor3.getBranchCells();
+        MapStructurePreprocessor mapStructurePreprocessor = new MapStructurePreprocessor();
+        setDistancesAndPaths(mapStructurePreprocessor);
         // CORRIDORS = mapStructurePreprocessor.getCorridors(State.WALLS);
 
-        CORRIDORS = mapStructurePreprocessor3.getCorridors(State.WALLS);
+        CORRIDORS = mapStructurePreprocessor.getCorridors(State.WALLS);
         // Debug.printCorridors(CORRIDORS);
-        DEADEND_CORRIDORS = mapStructurePreprocessor3.getDeadendCorridors(CORRIDORS, State.WALLS);
+        DEADEND_CORRIDORS = mapStructurePreprocessor.getDeadendCorridors(CORRIDORS, State.WALLS);
         // Debug.printCorridors(DEADEND_CORRIDORS);
-        mapStructurePreprocessor3.rankGoals();
+        GOAL_DEPENDENCIES = mapStructurePreprocessor.rankGoals();
 
         return initialState;
     }
@@ -192,7 +215,53 @@ public class LevelMetadata {
         Returns the real distance between to points (row1, col1) and (row2, col2).
      */
     public static int getDistance(int startRow, int startCol, int endRow, int endCol) {
-        return DISTANCES[startRow][startCol][endRow][endCol];
+        int startCell = CELL_INDEX[startRow * MAP_COLS + startCol];
+        int endCell = CELL_INDEX[endRow * MAP_COLS + endCol];
+        if (startCell < 0 || endCell < 0) {
+            return MAP_AREA;
+        }
+        return DISTANCES.getDistance(startCell, endCell);
+    }
+
+    /*
+        Returns a lower bound of the real distance between (row1, col1) and (row2, col2) for the heuristics.
+        It is the real distance unless DistanceEngine.LANDMARKS is used.
+     */
+    public static int getDistanceLowerBound(int startRow, int startCol, int endRow, int endCol) {
+        int startCell = CELL_INDEX[startRow * MAP_COLS + startCol];
+        int endCell = CELL_INDEX[endRow * MAP_COLS + endCol];
+        if (startCell < 0 || endCell < 0) {
+            return MAP_AREA;
+        }
+        return DISTANCES.getDistanceLowerBound(startCell, endCell);
+    }
+
+    /*
+        Returns the free-cell index of (row, col), -1 if it is a wall.
+     */
+    public static int getCellIndex(int row, int col) {
+        return CELL_INDEX[row * MAP_COLS + col];
+    }
+
+    /*
+        Returns true if the box can never reach any of its goals from (row, col)
+     */
+    public static boolean isDeadCell(char box, int row, int col) {
+        boolean[] deadCells = DEAD_CELLS[StateUtils.boxCharToInt(box)];
+        int cell = CELL_INDEX[row * MAP_COLS + col];
+        return deadCells != null && cell >= 0 && deadCells[cell];
+    }
+
+    /*
+        Returns true if any box of the state is on one of its dead cells
+     */
+    public static boolean hasBoxOnDeadCell(State state) {
+        for (int i = 0; i < state.getNumOfBoxes(); i++) {
+            if (isDeadCell(state.getBox(i), state.getBoxRow(i), state.getBoxCol(i))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /*
@@ -201,27 +270,83 @@ public class LevelMetadata {
         you have to go to (1, 2) first.
      */
     public static int[] getNextCell(int startRow, int startCol, int endRow, int endCol) {
-        return new int[]{PATHS_ROW[startRow][startCol][endRow][endCol], PATHS_COL[startRow][startCol][endRow][endCol]};
+        int nextPosition = getNextPosition(startRow, startCol, endRow, endCol);
+        if (nextPosition < 0) {
+            return new int[]{-1, -1};
+        }
+        return new int[]{nextPosition / MAP_COLS, nextPosition % MAP_COLS};
     }
 
+    /*
+        Returns the shortest path between (row1, col1) and (row2, col2) as row, col pairs (both cells included),
+        null if they are not connected.
+     */
     public static int[] getPath(int startRow, int startCol, int endRow, int endCol) {
-        int[] path = new int[]{startRow, startCol};
-        int nextRow = startRow;
-        int nextCol = startCol;
+        if (startRow == endRow && startCol == endCol) {
+            return new int[]{startRow, startCol};
+        }
+        int distance = getDistance(startRow, startCol, endRow, endCol);
+        if (distance >= MAP_AREA) {
+            return null;
+        }
 
-        while(!(nextRow == endRow && nextCol == endCol)) {
-            int[] nextCell = getNextCell(nextRow, nextCol, endRow, endCol);
-            nextRow = nextCell[0];
-            nextCol = nextCell[1];
+        int[] path = new int[getPathSize(distance)];
+        return fillPath(startRow, startCol, endRow, endCol, path, 0) < 0 ? null : path;
+    }
 
-            if (nextRow < 0 || nextCol < 0) {
-                return null;
+    /*
+        Writes the shortest path between (row1, col1) and (row2, col2) to the buffer from the offset,
+        in the same format as getPath(...), without allocating anything.
+        Returns the number of written entries, -1 if the cells are not connected.
+        The buffer has to fit getPathSize(getDistance(...)) entries from the offset.
+     */
+    public static int fillPath(int startRow, int startCol, int endRow, int endCol, int[] buffer, int offset) {
+        int index = offset;
+        buffer[index++] = startRow;
+        buffer[index++] = startCol;
+        int row = startRow;
+        int col = startCol;
+
+        while (row != endRow || col != endCol) {
+            int nextPosition = getNextPosition(row, col, endRow, endCol);
+            if (nextPosition < 0) {
+                return -1;
             }
-
-            path = addToPath(path, nextRow, nextCol);
+            row = nextPosition / MAP_COLS;
+            col = nextPosition % MAP_COLS;
+            buffer[index++] = row;
+            buffer[index++] = col;
         }
 
-        return path;
+        return index - offset;
+    }
+
+    /*
+        Number of entries of a path of the given distance (row, col of each of its distance + 1 cells)
+     */
+    public static int getPathSize(int distance) {
+        return 2 * (distance + 1);
+    }
+
+    /*
+        Returns the next cell of the shortest path as (row * MAP_COLS + col), -1 for the same or unreachable cells
+     */
+    private static int getNextPosition(int startRow, int startCol, int endRow, int endCol) {
+        if (NEXT_CELLS == null) {
+            return getNextPositionFromDistances(startRow, startCol, endRow, endCol);
+        }
+        int startCell = CELL_INDEX[startRow * MAP_COLS + startCol];
+        int endCell = CELL_INDEX[endRow * MAP_COLS + endCol];
+        if (startCell < 0 || endCell < 0) {
+            return -1;
+        }
+        // the same and the unreachable cells don't have a next cell
+        int distance = DISTANCES.getDistance(startCell, endCell);
+        if (distance == 0 || distance >= MAP_AREA) {
+            return -1;
+        }
+        Action direction = NextCellTable.DIRECTIONS[NEXT_CELLS.getDirection(startCell, endCell)];
+        return (startRow + direction.agentRowDelta) * MAP_COLS + startCol + direction.agentColDelta;
     }
 
 
@@ -244,6 +369,15 @@ public class LevelMetadata {
         return AGENT_GOALS_NUMBER > 0;
     }
 
+    private static void setDistancesAndPaths(MapStructurePreprocessor mapStructurePreprocessor) {
+        CELL_INDEX = mapStructurePreprocessor.getCellIndex();
+        DISTANCES = mapStructurePreprocessor.getDistances();
+        NEXT_CELLS = mapStructurePreprocessor.getNextCells();
+        DISTANCE_ENGINE_SUMMARY = mapStructurePreprocessor.getEngineSummary();
+        BRANCH_CELLS = mapStructurePreprocessor.getBranchCells();
+        DEAD_CELLS = mapStructurePreprocessor.getDeadCells();
+    }
+
     private static void initObjectsPerColor(State initialState) {
         AGENTS_PER_COLOR = new int[Color.values().length][LevelMetadata.MAP_AREA];
         BOXES_PER_COLOR = new char[Color.values().length][LevelMetadata.MAP_AREA];
@@ -261,15 +395,10 @@ public class LevelMetadata {
         removeNegativeIntegers(AGENTS_PER_COLOR);
 
         Arrays.fill(colorCounts, 0);
-        for (int boxRow = 0; boxRow < initialState.boxes.length; boxRow++) {
-            for (int boxCol = 0; boxCol < initialState.boxes[boxRow].length; boxCol++) {
-                char box = initialState.boxes[boxRow][boxCol];
-                if (box == 0) {
-                    continue;
-                }
-                int colorValue = State.BOX_COLORS[StateUtils.boxCharToInt(box)].getValue();
-                BOXES_PER_COLOR[colorValue][colorCounts[colorValue]++] = box;
-            }
+        for (int i = 0; i < initialState.getNumOfBoxes(); i++) {
+            char box = initialState.getBox(i);
+            int colorValue = State.BOX_COLORS[StateUtils.boxCharToInt(box)].getValue();
+            BOXES_PER_COLOR[colorValue][colorCounts[colorValue]++] = box;
         }
         removeNonBoxChars(BOXES_PER_COLOR);
     }
@@ -346,12 +475,25 @@ public class LevelMetadata {
     }
 
 
-    private static int[] addToPath(int[] path, int row, int col) {
-        int len = path.length;
-        path = Arrays.copyOf(path, len + 2);
-        path[len] = row;
-        path[len + 1] = col;
-        return path;
+    /*
+        Descends the distance gradient: the next cell is the first neighbour (in NEXT_CELL_ORDER), which is
+        one step closer to the end cell. Returns -1 for the same or unreachable cells, like NEXT_CELLS.
+     */
+    private static int getNextPositionFromDistances(int startRow, int startCol, int endRow, int endCol) {
+        // Distances are symmetric, so only the distances from the end cell are read
+        int distance = getDistance(endRow, endCol, startRow, startCol);
+        if (distance == 0 || distance >= MAP_AREA) {
+            return -1;
+        }
+
+        for (Action action : NEXT_CELL_ORDER) {
+            int row = startRow + action.agentRowDelta;
+            int col = startCol + action.agentColDelta;
+            if (!StateUtils.isOutOfBounds(row, col) && getDistance(endRow, endCol, row, col) == distance - 1) {
+                return row * MAP_COLS + col;
+            }
+        }
+        return -1;
     }
     
 }
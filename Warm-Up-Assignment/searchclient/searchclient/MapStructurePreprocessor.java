@@ -1,7 +1,9 @@
 package searchclient;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
+import java.util.stream.IntStream;
 
 /*
     Helper class to compute distances and paths, which are persisted in LevelMetadata
@@ -11,19 +13,73 @@ public class MapStructurePreprocessor {
     private final int mapRows = LevelMetadata.MAP_ROWS;
     private final int mapCols = LevelMetadata.MAP_COLS;
     private final int mapArea = LevelMetadata.MAP_AREA;
+    private final int threads = LevelMetadata.PREPROCESSING_THREADS;
+    private final String cacheDirectory = LevelMetadata.PREPROCESSING_CACHE_DIR;
+    private static final int NUM_OF_DIRECTIONS = NextCellTable.DIRECTIONS.length;
     private int[] branchCells = new int[0];
-    private int[][][][] distances;
-    private int[][][][] pathsRow;
-    private int[][][][] pathsCol;
+    /*
+     * Free-cell index of each cell, kept flat by (row * mapCols + col), -1 for walls
+     */
+    private int[] cellIndex;
+    private int[] cellRows;
+    private int[] cellCols;
+    private int numOfCells;
+    private CellComponents components;
+    private DistanceEngine engine;
+    private boolean engineSelected;
+    private boolean storePaths;
+    private DistanceStore distances;
+    /*
+     * Filled by compute(...), null when the distances are computed lazily or loaded from the cache
+     */
+    private DistanceTable distanceTable;
+    /*
+     * First move of each shortest path, null unless storePaths
+     */
+    private NextCellTable nextCells;
+    /*
+     * Used by compute(...) only, see initNeighbours() and BfsBuffers
+     */
+    private int[] neighbours;
+    private final ThreadLocal<BfsBuffers> bfsBuffers = ThreadLocal.withInitial(BfsBuffers::new);
 
 
     public MapStructurePreprocessor() {
-        initDistancesAndPaths();
+        initCellIndex();
+        components = new CellComponents(mapRows, mapCols, cellIndex, cellRows, cellCols);
+        engineSelected = LevelMetadata.DISTANCE_ENGINE == null;
+        engine = engineSelected
+                ? DistanceEngine.select(components, numOfCells, getNumOfGoalCells(), LevelMetadata.LANDMARKS)
+                : LevelMetadata.DISTANCE_ENGINE;
+        storePaths = engine.storesPaths();
+
+        if (engine == DistanceEngine.LANDMARKS) {
+            distances = new LandmarkDistanceStore(createGoalRootedLazyStore(), numOfCells, LevelMetadata.LANDMARKS, mapArea);
+        } else if (engine == DistanceEngine.REGIONS) {
+            distances = new RegionGraph(mapRows, mapCols, cellIndex, cellRows, cellCols, createGoalRootedLazyStore(), mapArea);
+        } else if (engine == DistanceEngine.LAZY) {
+            distances = createGoalRootedLazyStore();
+        } else if (cacheDirectory != null) {
+            PreprocessingCache cache = new PreprocessingCache(cacheDirectory, mapRows, mapCols, numOfCells, components);
+            distances = cache.load(storePaths, mapArea);
+            if (distances != null) {
+                allocatePaths();
+                if (storePaths) {
+                    cache.loadPaths(nextCells);
+                }
+            } else {
+                initDistancesAndPaths();
+                computeAll();
+                cache.save(distanceTable, nextCells);
+            }
+        } else {
+            initDistancesAndPaths();
+            computeAll();
+        }
 
         for (int row=0; row < mapRows; row++) {
             for (int col=0; col < mapCols; col++) {
                 if (!StateUtils.cellIsWall(row, col)) {
-                    compute(row, col);
                     int numOfWalls = StateUtils.getNumOfWallsAround(row, col);
                     if (numOfWalls < 2) {
                         addBranchCell(row, col);
@@ -36,50 +92,158 @@ public class MapStructurePreprocessor {
         System.gc(); //Force unused memory release
     }
 
-    public int[][][][] getDistances() {
+    public DistanceStore getDistances() {
         return distances;
     }
 
-    public int[][][][] getPathsRow() {
-        return pathsRow;
+    public int[] getCellIndex() {
+        return cellIndex;
     }
 
-    public int[][][][] getPathsCol() {
-        return pathsCol;
+    public NextCellTable getNextCells() {
+        return nextCells;
+    }
+
+    /*
+        E.g. "Engine: FULL (auto, ~12.50 MB)"
+     */
+    public String getEngineSummary() {
+        long footprint = engine.estimateFootprint(components, numOfCells, getNumOfGoalCells(), LevelMetadata.LANDMARKS);
+        return String.format("Engine: %s (%s, ~%.2f MB)", engine, engineSelected ? "auto" : "set",
+                footprint / (1024d * 1024d));
     }
 
     public int[] getBranchCells() {
         return branchCells;
     }
 
-    private void initDistancesAndPaths() {
-        distances = new int[mapRows][mapCols][mapRows][mapCols];
-        pathsRow = new int[mapRows][mapCols][mapRows][mapCols];
-        pathsCol = new int[mapRows][mapCols][mapRows][mapCols];
-        for (int i=0; i<mapRows; i++) {
-            for (int j=0; j<mapCols; j++) {
-                for (int k=0; k<mapRows; k++) {
-                    Arrays.fill(distances[i][j][k], mapArea);
-                    Arrays.fill(pathsRow[i][j][k], -1);
-                    Arrays.fill(pathsCol[i][j][k], -1);
+    /*
+        Returns [box][cellIndex] - true if no goal of the box can ever be reached from the free cell, whatever
+        the other objects do (relaxed reverse BFS from the goals of the box). The box can be moved from a cell
+        to its free neighbour if it can be pushed (the cell has another free neighbour for the agent) or
+        pulled (the neighbour has another free neighbour for the agent). Boxes without goals have no dead cells
+        (null), they may end anywhere.
+     */
+    public boolean[][] getDeadCells() {
+        if (neighbours == null) {
+            initNeighbours();
+        }
+        int[] numOfFreeNeighbours = new int[numOfCells];
+        for (int cell = 0; cell < numOfCells; cell++) {
+            for (int direction = 0; direction < NUM_OF_DIRECTIONS; direction++) {
+                if (neighbours[cell * NUM_OF_DIRECTIONS + direction] >= 0) {
+                    numOfFreeNeighbours[cell]++;
+                }
+            }
+        }
+
+        boolean[][] deadCells = new boolean[LevelMetadata.MAX_NUM_OF_DISTINCT_BOXES][];
+        int[] queue = new int[numOfCells];
+        for (int box = 0; box < deadCells.length; box++) {
+            int[] boxGoals = LevelMetadata.BOX_GOALS_COORDINATES[box];
+            if (boxGoals.length == 0) {
+                continue;
+            }
+            boolean[] alive = new boolean[numOfCells];
+            int head = 0;
+            int tail = 0;
+            for (int i = 0; i < boxGoals.length; i += 2) {
+                int goalCell = getCellIndex(boxGoals[i], boxGoals[i + 1]);
+                if (goalCell >= 0 && !alive[goalCell]) {
+                    alive[goalCell] = true;
+                    queue[tail++] = goalCell;
                 }
             }
+            // the box can be moved from the neighbour cell to the alive cell
+            while (head < tail) {
+                int cell = queue[head++];
+                for (int direction = 0; direction < NUM_OF_DIRECTIONS; direction++) {
+                    int adjCell = neighbours[cell * NUM_OF_DIRECTIONS + direction];
+                    if (adjCell >= 0 && !alive[adjCell]
+                            && (numOfFreeNeighbours[adjCell] > 1 || numOfFreeNeighbours[cell] > 1)) {
+                        alive[adjCell] = true;
+                        queue[tail++] = adjCell;
+                    }
+                }
+            }
+            deadCells[box] = new boolean[numOfCells];
+            for (int cell = 0; cell < numOfCells; cell++) {
+                deadCells[box][cell] = !alive[cell];
+            }
         }
+        return deadCells;
     }
 
-    public int[][] getMapSplit(State initialState){
+    /*
+        Almost every query measures the distance to a goal, so the distance maps of all goal cells are pinned
+        in the lazy store. Memory is O(goals * cells) and the other pairs are computed on demand.
+     */
+    private LazyDistanceStore createGoalRootedLazyStore() {
+        LazyDistanceStore lazyDistanceStore = new LazyDistanceStore(mapRows, mapCols, cellIndex, cellRows, cellCols, mapArea);
+        for (int cell=0; cell < numOfCells; cell++) {
+            if (State.GOALS[cellRows[cell]][cellCols[cell]] != 0) {
+                lazyDistanceStore.pin(cell);
+            }
+        }
+        return lazyDistanceStore;
+    }
+
+    private int getNumOfGoalCells() {
+        int numOfGoals = 0;
+        for (int cell=0; cell < numOfCells; cell++) {
+            if (State.GOALS[cellRows[cell]][cellCols[cell]] != 0) {
+                numOfGoals++;
+            }
+        }
+        return numOfGoals;
+    }
+
+    private void initDistancesAndPaths() {
+        distanceTable = new DistanceTable(components, mapArea);
+        distances = distanceTable;
+        allocatePaths();
+    }
+
+    private void allocatePaths() {
+        if (!storePaths) {
+            return;
+        }
+        nextCells = new NextCellTable(components);
+    }
+
+    /*
+        Labels the connected parts of the map (submaps) 1, 2, ... in the row-major order of their first cell.
+        Only walls matter, so each part is labelled with a single flood fill and no distances are needed.
+        Cells on the border of the map are never labelled (stay 0).
+     */
+    public static int[][] getMapSplit(State initialState){
+        int mapRows = LevelMetadata.MAP_ROWS;
+        int mapCols = LevelMetadata.MAP_COLS;
         int[][] mapSplit=new int[mapRows][mapCols];
+        boolean[] visited = new boolean[mapRows * mapCols];
+        int[] queue = new int[mapRows * mapCols];
         int subMap = 1;
-        for (int[] row: mapSplit)
-            Arrays.fill(row,0); //populate map grid with 0s
 
         for (int row = 1; row < mapRows - 1; row++) {
             for (int col = 1; col < mapCols - 1; col++) {
-                if (!State.WALLS[row][col] && mapSplit[row][col]==0) { //found new cell that is not a wall
-                    for (int rowTrg = 1; rowTrg < mapRows - 1; rowTrg++) {
-                        for (int colTrg = 1; colTrg < mapCols - 1; colTrg++) {
-                            if (distances[row][col][rowTrg][colTrg]!=mapArea){
-                                mapSplit[rowTrg][colTrg] = subMap;
+                if (!State.WALLS[row][col] && !visited[row * mapCols + col]) { //found new cell that is not a wall
+                    int head = 0;
+                    int tail = 0;
+                    visited[row * mapCols + col] = true;
+                    queue[tail++] = row * mapCols + col;
+                    while (head < tail) {
+                        int cellRow = queue[head] / mapCols;
+                        int cellCol = queue[head++] % mapCols;
+                        if (cellRow > 0 && cellRow < mapRows - 1 && cellCol > 0 && cellCol < mapCols - 1) {
+                            mapSplit[cellRow][cellCol] = subMap;
+                        }
+                        for (Action direction : NextCellTable.DIRECTIONS) {
+                            int adjRow = cellRow + direction.agentRowDelta;
+                            int adjCol = cellCol + direction.agentColDelta;
+                            if (adjRow >= 0 && adjRow < mapRows && adjCol >= 0 && adjCol < mapCols
+                                    && !State.WALLS[adjRow][adjCol] && !visited[adjRow * mapCols + adjCol]) {
+                                visited[adjRow * mapCols + adjCol] = true;
+                                queue[tail++] = adjRow * mapCols + adjCol;
                             }
                         }
                     }
@@ -90,11 +254,37 @@ public class MapStructurePreprocessor {
         return mapSplit;
     }
 
-    public State replaceBoxWall(State initialState){
+    private void initCellIndex() {
+        cellIndex = new int[mapArea];
+        cellRows = new int[mapArea];
+        cellCols = new int[mapArea];
+        numOfCells = 0;
+        for (int row=0; row < mapRows; row++) {
+            for (int col=0; col < mapCols; col++) {
+                if (StateUtils.cellIsWall(row, col)) {
+                    cellIndex[row * mapCols + col] = -1;
+                } else {
+                    cellRows[numOfCells] = row;
+                    cellCols[numOfCells] = col;
+                    cellIndex[row * mapCols + col] = numOfCells++;
+                }
+            }
+        }
+        cellRows = Arrays.copyOf(cellRows, numOfCells);
+        cellCols = Arrays.copyOf(cellCols, numOfCells);
+    }
+
+    private int getCellIndex(int row, int col) {
+        return cellIndex[row * mapCols + col];
+    }
+
+    public static State replaceBoxWall(State initialState){
+        int mapRows = LevelMetadata.MAP_ROWS;
+        int mapCols = LevelMetadata.MAP_COLS;
         int[] agentRows = initialState.agentRows;
         int[] agentCols = initialState.agentCols;
         Color[] agentColors = State.AGENT_COLORS;
-        char[][] boxes = initialState.boxes; 
+        char[][] boxes = initialState.getBoxGrid();
         Color[] boxColors = State.BOX_COLORS;
         char[][] goals = State.GOALS;
         int[] agentSplit = new int[10];
@@ -130,63 +320,103 @@ public class MapStructurePreprocessor {
         return new State(agentRows, agentCols, agentColors, State.WALLS, boxes, boxColors, goals);
     }
 
-    private void compute(int startRow, int startCol) {
-        distances[startRow][startCol][startRow][startCol] = 0;
-        int[][] pointDistances = distances[startRow][startCol];
-        int[][] pointPathsRow = pathsRow[startRow][startCol];
-        int[][] pointPathsCol = pathsCol[startRow][startCol];
-        ArrayDeque<Coordinates> queue = new ArrayDeque<>(65536);
-        queue.addLast(new Coordinates(startRow, startCol));
-        initPaths(new Coordinates(startRow, startCol));
-
-        while (true) {
-            if (queue.isEmpty()) {
-                break;
+    /*
+        Runs compute(...) from every free cell. Each run writes only the slice of its start cell,
+        so with more than one thread the runs are split between the threads of a ForkJoinPool.
+     */
+    private void computeAll() {
+        initNeighbours();
+        if (threads <= 1) {
+            for (int cell=0; cell < numOfCells; cell++) {
+                compute(cell);
             }
+            return;
+        }
 
-            Coordinates coords = queue.pollFirst();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, numOfCells).parallel()
+                    .forEach(this::compute)).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-            List<Coordinates> adjCells = getAdjacentCells(coords);
-            for (Coordinates adjCoords : adjCells) {
-                int row = adjCoords.row;
-                int col = adjCoords.col;
-                if (!coordsOutOfBounds(adjCoords) && !StateUtils.cellIsWall(row, col) && pointDistances[row][col] == mapArea) {
-                    pointDistances[row][col] = getCellDistanceValue(pointDistances, new Coordinates(row, col));
-                    if (pointDistances[row][col] > 1) {
-                        pointPathsRow[row][col] = pointPathsRow[coords.row][coords.col];
-                        pointPathsCol[row][col] = pointPathsCol[coords.row][coords.col];
-                    }
-                    queue.addLast(adjCoords);
+    /*
+        BFS from the start cell over the free-cell indexes, using the neighbours table and the buffers of the current
+        thread, so nothing is allocated per step. The first move of the path to a cell is inherited from the cell
+        it was discovered from (or is the direction itself for the neighbours of the start cell).
+     */
+    private void compute(int startCell) {
+        BfsBuffers buffers = bfsBuffers.get();
+        int[] queue = buffers.queue;
+        int[] cellDistances = buffers.distances;
+        int[] firstMoves = buffers.firstMoves;
+        int head = 0;
+        int tail = 0;
+
+        distanceTable.set(startCell, startCell, 0);
+        cellDistances[startCell] = 0;
+        queue[tail++] = startCell;
+
+        while (head < tail) {
+            int cell = queue[head++];
+            int distance = cellDistances[cell] + 1;
+            for (int direction = 0; direction < NUM_OF_DIRECTIONS; direction++) {
+                int adjCell = neighbours[cell * NUM_OF_DIRECTIONS + direction];
+                if (adjCell < 0 || cellDistances[adjCell] >= 0) {
+                    continue;
+                }
+                cellDistances[adjCell] = distance;
+                distanceTable.set(startCell, adjCell, distance);
+                if (storePaths) {
+                    firstMoves[adjCell] = cell == startCell ? direction : firstMoves[cell];
+                    nextCells.setDirection(startCell, adjCell, firstMoves[adjCell]);
                 }
+                queue[tail++] = adjCell;
             }
         }
-    }
 
-    private void addBranchCell(int row, int col) {
-        int len = branchCells.length;
-        branchCells = Arrays.copyOf(branchCells, len + 2);
-        branchCells[len] = row;
-        branchCells[len + 1] = col;
+        // every visited cell is in the queue, so only those are reset for the next run
+        for (int i = 0; i < tail; i++) {
+            cellDistances[queue[i]] = -1;
+        }
     }
 
-    private void initPaths(Coordinates coords) {
-        List<Coordinates> adjCells = getAdjacentCells(coords);
-        for (Coordinates adjCoords : adjCells) {
-            int row = adjCoords.row;
-            int col = adjCoords.col;
-            if (!coordsOutOfBounds(adjCoords) && !StateUtils.cellIsWall(row, col)) {
-                pathsRow[coords.row][coords.col][row][col] = row;
-                pathsCol[coords.row][coords.col][row][col] = col;
+    /*
+        Neighbour of each free cell in each direction of NextCellTable.DIRECTIONS, kept flat
+        by (cell * NUM_OF_DIRECTIONS + direction), -1 for walls and cells out of the map
+     */
+    private void initNeighbours() {
+        neighbours = new int[numOfCells * NUM_OF_DIRECTIONS];
+        for (int cell = 0; cell < numOfCells; cell++) {
+            for (int direction = 0; direction < NUM_OF_DIRECTIONS; direction++) {
+                int row = cellRows[cell] + NextCellTable.DIRECTIONS[direction].agentRowDelta;
+                int col = cellCols[cell] + NextCellTable.DIRECTIONS[direction].agentColDelta;
+                boolean outOfBounds = row < 0 || row >= mapRows || col < 0 || col >= mapCols;
+                neighbours[cell * NUM_OF_DIRECTIONS + direction] = outOfBounds ? -1 : getCellIndex(row, col);
             }
         }
     }
 
-    private int getCellDistanceValue(int[][] distances, Coordinates coords) {
-        int min = mapArea;
-        for (Coordinates adjCoords : getAdjacentCells(coords)) {
-            min = Math.min(distances[adjCoords.row][adjCoords.col], min);
+    /*
+        Reusable BFS queue and per-cell values of a single thread, the values are -1 between the runs
+     */
+    private class BfsBuffers {
+        final int[] queue = new int[numOfCells];
+        final int[] distances = new int[numOfCells];
+        final int[] firstMoves = new int[numOfCells];
+
+        BfsBuffers() {
+            Arrays.fill(distances, -1);
         }
-        return min + 1;
+    }
+
+    private void addBranchCell(int row, int col) {
+        int len = branchCells.length;
+        branchCells = Arrays.copyOf(branchCells, len + 2);
+        branchCells[len] = row;
+        branchCells[len + 1] = col;
     }
 
     private List<Coordinates> getAdjacentCells(Coordinates coords) {
@@ -204,16 +434,23 @@ public class MapStructurePreprocessor {
         return coords.row < 0 || coords.row >= mapRows || coords.col < 0 || coords.col >= mapCols;
     }
 
-    public void rankGoals() {
+    /*
+        Ranks the goals of the clusters (LevelMetadata.goalRank) and returns the dependencies between them
+     */
+    public GoalDependencies rankGoals() {
         HashMap<Coordinates, Integer> goalRank = LevelMetadata.goalRank;
         boolean[][] walls = State.WALLS;
         char[][] goals = State.GOALS;
 
         GoalCluster[] goalClusters = getGoalClusters(goalRank,walls,goals);
+        GoalDependencies dependencies = new GoalDependencies(goals);
         for (GoalCluster cluster: goalClusters){
             if (cluster == null){break;}
             cluster.rankGoal();
+            cluster.addDependencies(dependencies);
         }
+        dependencies.build();
+        return dependencies;
     }
     public class GoalCluster {
         ClusterType type;
@@ -383,6 +620,28 @@ public class MapStructurePreprocessor {
             }
         }
 
+        /*
+            Dead end: each goal after the next deeper goal (lower position in the dead end)
+         */
+        public void addDependencies(GoalDependencies dependencies) {
+            if (this.type == ClusterType.DEADEND){
+                int[] goalAt = new int[deadend.length];
+                Arrays.fill(goalAt, -1);
+                for (int i=0;i<size;i++){
+                    goalAt[goals[i][2]] = i;
+                }
+                int deeper = -1;
+                for (int position=0;position<deadend.length;position++){
+                    int i = goalAt[position];
+                    if (i < 0){continue;}
+                    if (deeper >= 0){
+                        dependencies.addDependency(goals[deeper][0],goals[deeper][1],goals[i][0],goals[i][1]);
+                    }
+                    deeper = i;
+                }
+            }
+        }
+
         public enum ClusterType{
             ADJACENT,DEADEND;
         }
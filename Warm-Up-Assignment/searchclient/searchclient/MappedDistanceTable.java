@@ -0,0 +1,32 @@
+package searchclient;
+
+import java.nio.CharBuffer;
+
+/*
+    Read-only distance table backed by a memory mapped file of the preprocessing cache (see PreprocessingCache).
+    It has the same layout as DistanceTable, the entries are read directly from the mapped pages, without copying.
+ */
+public class MappedDistanceTable implements DistanceStore {
+
+    private static final char UNREACHABLE = Character.MAX_VALUE;
+
+    private final CellComponents components;
+    private final int unreachableDistance;
+    private final CharBuffer distances;
+
+    public MappedDistanceTable(CharBuffer distances, CellComponents components, int unreachableDistance) {
+        this.components = components;
+        this.unreachableDistance = unreachableDistance;
+        this.distances = distances;
+    }
+
+    @Override
+    public int getDistance(int startCell, int endCell) {
+        int entry = components.getEntry(startCell, endCell);
+        if (entry < 0) {
+            return unreachableDistance;
+        }
+        char distance = distances.get(entry);
+        return distance == UNREACHABLE ? unreachableDistance : distance;
+    }
+}
@@ -0,0 +1,91 @@
+package searchclient;
+
+import java.nio.LongBuffer;
+
+/*
+    First move of the shortest path between every pair of connected free cells, packed into 2 bits per pair.
+    The next cell is always one of the four neighbours of the start cell, so only its direction (index of DIRECTIONS)
+    is stored. Pairs without a next cell (the same cell, unreachable cells) are recognized from the distance table.
+
+    The table is partitioned by the connected components of the map like DistanceTable (see CellComponents).
+    Every start cell has its own row of whole longs (32 pairs per long), so start cells never share a long and
+    their rows can be filled by different threads.
+ */
+public class NextCellTable {
+
+    public static final Action[] DIRECTIONS = {Action.MoveE, Action.MoveS, Action.MoveW, Action.MoveN};
+    private static final int PAIRS_PER_WORD = Long.SIZE / 2;
+
+    private final CellComponents components;
+    /*
+     * Start of the rows of each component and number of longs of each row
+     */
+    private final int[] rowOffsets;
+    private final int[] rowLengths;
+    private final long[] words;
+
+    public NextCellTable(CellComponents components) {
+        this.components = components;
+        int numOfComponents = components.getNumOfComponents();
+        this.rowOffsets = new int[numOfComponents];
+        this.rowLengths = new int[numOfComponents];
+        long numOfWords = getNumOfWords(components);
+        if (numOfWords > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many connected free cells for the next cell table: " + numOfWords + " longs");
+        }
+        int offset = 0;
+        for (int component = 0; component < numOfComponents; component++) {
+            rowOffsets[component] = offset;
+            rowLengths[component] = getRowLength(components.getComponentSize(component));
+            offset += components.getComponentSize(component) * rowLengths[component];
+        }
+        this.words = new long[(int) numOfWords];
+    }
+
+    /*
+        Returns the number of longs of the table for the given components
+     */
+    public static long getNumOfWords(CellComponents components) {
+        long numOfWords = 0;
+        for (int component = 0; component < components.getNumOfComponents(); component++) {
+            int size = components.getComponentSize(component);
+            numOfWords += (long) size * getRowLength(size);
+        }
+        return numOfWords;
+    }
+
+    private static int getRowLength(int componentSize) {
+        return (componentSize + PAIRS_PER_WORD - 1) / PAIRS_PER_WORD;
+    }
+
+    /*
+        Returns the index of DIRECTIONS of the first move from the start cell to the end cell. The cells have to be
+        connected and different.
+     */
+    public int getDirection(int startCell, int endCell) {
+        int endIndex = components.getLocalIndex(endCell);
+        long word = words[getWordIndex(startCell, endIndex)];
+        return (int) (word >>> ((endIndex % PAIRS_PER_WORD) * 2)) & 3;
+    }
+
+    public void setDirection(int startCell, int endCell, int direction) {
+        int endIndex = components.getLocalIndex(endCell);
+        int wordIndex = getWordIndex(startCell, endIndex);
+        int shift = (endIndex % PAIRS_PER_WORD) * 2;
+        words[wordIndex] = (words[wordIndex] & ~(3L << shift)) | ((long) direction << shift);
+    }
+
+    public void writeTo(LongBuffer buffer) {
+        buffer.put(words);
+    }
+
+    public void readFrom(LongBuffer buffer) {
+        buffer.get(words);
+    }
+
+    private int getWordIndex(int startCell, int endIndex) {
+        int component = components.getComponent(startCell);
+        return rowOffsets[component] + components.getLocalIndex(startCell) * rowLengths[component]
+                + endIndex / PAIRS_PER_WORD;
+    }
+}
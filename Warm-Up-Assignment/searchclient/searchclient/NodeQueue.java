@@ -0,0 +1,59 @@
+package searchclient;
+
+import java.util.Arrays;
+
+/*
+    Frontier of node numbers ordered by f, a binary min-heap of (f << 32 | node) kept in a long array.
+    Nodes with the same f are popped in the order of their numbers.
+ */
+public class NodeQueue {
+
+    private long[] heap = new long[1 << 12];
+    private int size = 0;
+
+    public void add(int f, int node) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        long item = ((long) f << 32) | node;
+        int index = size++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= item) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = item;
+    }
+
+    /*
+        Removes and returns the node with the lowest f
+     */
+    public int poll() {
+        long first = heap[0];
+        long item = heap[--size];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (item <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = item;
+        return (int) first;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -71,7 +71,7 @@ public class Obstacles extends ArrayList<List<Integer>> {
             }
 
             // Check if there is any box on the way of the prioritizedAgent
-            if (state.boxes[row][col] != 0) {
+            if (state.boxAt(row, col) != 0) {
                 List<Integer> newObstacle = Arrays.asList(row, col);
                 if (!obstacles.contains(newObstacle)) {
                     obstacles.add(newObstacle);
@@ -241,12 +241,11 @@ public class Obstacles extends ArrayList<List<Integer>> {
                                                                           // agent
                 char agentObstacleChar = StateUtils.agentAt(newState, obstacleRow, obstacleCol);
                 int agentObstacle = StateUtils.agentCharToInt(agentObstacleChar);
-                newState.agentRows[agentObstacle] = freeCellRow;
-                newState.agentCols[agentObstacle] = freeCellCol;
+                newState.moveAgent(agentObstacle, freeCellRow, freeCellCol);
             } else {
                 char boxObstacle = StateUtils.boxAt(newState, obstacleRow, obstacleCol);
-                newState.boxes[obstacleRow][obstacleCol] = 0;
-                newState.boxes[freeCellRow][freeCellCol] = boxObstacle;
+                newState.setBox(obstacleRow, obstacleCol, (char) 0);
+                newState.setBox(freeCellRow, freeCellCol, boxObstacle);
             }
         }
         // System.err.format("Constructed State:" + state.toString());
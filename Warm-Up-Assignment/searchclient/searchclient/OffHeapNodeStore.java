@@ -0,0 +1,158 @@
+package searchclient;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+    Nodes of SearchUtils.aStarSearch(...) kept outside of the Java heap, in direct buffers allocated in chunks.
+    Each node is a fixed-size record of ints:
+        parent node (-1 for the root), g, the joint action (one byte per agent), the packed state (State.pack(...))
+    The heap only keeps the chunk list and the duplicate index, an open-addressing table of the Zobrist keys
+    and node numbers (like ClosedSet). A duplicate is confirmed by comparing the packed states, so a key collision
+    never drops a state. The states are rebuilt from their records when they are expanded, the plan is read back
+    through the parent links.
+
+    The direct buffers count against -XX:MaxDirectMemorySize (-Xmx by default), not against the heap,
+    and they are only released by the GC after the search.
+ */
+public class OffHeapNodeStore {
+
+    private static final int CHUNK_INTS = 1 << 20;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final float MAX_LOAD = 0.5f;
+    private static final int PARENT = 0;
+    private static final int G = 1;
+    private static final int JOINT_ACTION = 2;
+    private static final Action[] ACTIONS = Action.values();
+
+    private final State template;
+    private final int numOfAgents;
+    private final int stateOffset;
+    private final int recordSize;
+    private final int recordsPerChunk;
+    private final ArrayList<IntBuffer> chunks = new ArrayList<>();
+    private final int[] record;
+    private int size = 0;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    /*
+     * Node + 1 by slot, 0 for the empty slots
+     */
+    private int[] nodes = new int[INITIAL_CAPACITY];
+
+    /*
+        template - any state of the search, the rebuilt states are copies of it with other agents and boxes
+     */
+    public OffHeapNodeStore(State template) {
+        this.template = template;
+        this.numOfAgents = template.numOfAgents;
+        this.stateOffset = JOINT_ACTION + (numOfAgents + 3) / 4;
+        this.recordSize = stateOffset + template.getPackedSize();
+        this.recordsPerChunk = CHUNK_INTS / recordSize;
+        this.record = new int[recordSize];
+    }
+
+    /*
+        Adds the state reached from the parent node by state.jointAction (parent -1 for the root).
+        Returns the new node, -1 if an equal state has already been added.
+     */
+    public int add(State state, int parent) {
+        long key = state.getKey();
+        int mask = keys.length - 1;
+        int slot = getSlot(key, mask);
+        while (nodes[slot] != 0) {
+            if (keys[slot] == key) {
+                read(nodes[slot] - 1);
+                if (state.matchesPacked(record, stateOffset)) {
+                    return -1;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        Arrays.fill(record, 0);
+        record[PARENT] = parent;
+        record[G] = state.g();
+        if (state.jointAction != null) {
+            for (int agent = 0; agent < numOfAgents; agent++) {
+                record[JOINT_ACTION + agent / 4] |= state.jointAction[agent].ordinal() << (8 * (agent % 4));
+            }
+        }
+        state.pack(record, stateOffset);
+        int node = size++;
+        write(node);
+
+        keys[slot] = key;
+        nodes[slot] = node + 1;
+        if (size > keys.length * MAX_LOAD) {
+            grow();
+        }
+        return node;
+    }
+
+    /*
+        Rebuilds the state of the node, without its parent and joint action
+     */
+    public State getState(int node) {
+        read(node);
+        return template.unpack(record, stateOffset, record[G]);
+    }
+
+    public Action[][] extractPlan(int node) {
+        read(node);
+        Action[][] plan = new Action[record[G]][];
+        while (record[PARENT] >= 0) {
+            Action[] jointAction = new Action[numOfAgents];
+            for (int agent = 0; agent < numOfAgents; agent++) {
+                jointAction[agent] = ACTIONS[(record[JOINT_ACTION + agent / 4] >>> (8 * (agent % 4))) & 0xFF];
+            }
+            plan[record[G] - 1] = jointAction;
+            read(record[PARENT]);
+        }
+        return plan;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void read(int node) {
+        IntBuffer chunk = chunks.get(node / recordsPerChunk);
+        chunk.get((node % recordsPerChunk) * recordSize, record, 0, recordSize);
+    }
+
+    private void write(int node) {
+        int chunkIndex = node / recordsPerChunk;
+        if (chunkIndex == chunks.size()) {
+            chunks.add(ByteBuffer.allocateDirect(recordsPerChunk * recordSize * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer());
+        }
+        chunks.get(chunkIndex).put((node % recordsPerChunk) * recordSize, record, 0, recordSize);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldNodes = nodes;
+        keys = new long[oldKeys.length * 2];
+        nodes = new int[oldNodes.length * 2];
+        int mask = keys.length - 1;
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            if (oldNodes[oldSlot] == 0) {
+                continue;
+            }
+            int slot = getSlot(oldKeys[oldSlot], mask);
+            while (nodes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[oldSlot];
+            nodes[slot] = oldNodes[oldSlot];
+        }
+    }
+
+    private static int getSlot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,166 @@
+package searchclient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/*
+    Binary cache of the distance table and the shortest paths computed by MapStructurePreprocessor.
+    The BFS results depend only on the walls, so the file is named by a hash (fingerprint) of the final walls
+    (after the unreachable boxes were replaced by walls). Running the same level again maps the file with
+    FileChannel.map and skips the BFS, the distances are then read directly from the mapped pages.
+
+    File layout:
+        header      - MAGIC, VERSION, mapRows, mapCols, numOfCells (int each), hasPaths (byte)
+        distances   - one char per pair of connected cells, the same layout as DistanceTable
+        next cells  - the longs of NextCellTable, only if hasPaths
+    The components of the cells are derived from the walls again, so they are not stored.
+ */
+public class PreprocessingCache {
+
+    private static final int MAGIC = 0x4D565043; // "MVPC"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 5 * Integer.BYTES + 1;
+
+    private final Path file;
+    private final int mapRows;
+    private final int mapCols;
+    private final int numOfCells;
+    private final CellComponents components;
+    private final long tableSize;
+    private final long numOfNextCellWords;
+
+    private MappedByteBuffer mappedNextCells;
+
+    public PreprocessingCache(String directory, int mapRows, int mapCols, int numOfCells, CellComponents components) {
+        this.file = Paths.get(directory, getFingerprint(mapRows, mapCols) + ".bin");
+        this.mapRows = mapRows;
+        this.mapCols = mapCols;
+        this.numOfCells = numOfCells;
+        this.components = components;
+        this.tableSize = components.getTableSize();
+        this.numOfNextCellWords = NextCellTable.getNumOfWords(components);
+    }
+
+    /*
+        A single mapping is limited to Integer.MAX_VALUE bytes, bigger tables are not cached
+     */
+    public boolean isSupported() {
+        return getFileSize(true) <= Integer.MAX_VALUE;
+    }
+
+    /*
+        Maps the distances of the cached file, returns null if there is no valid file for the current walls
+        (or it doesn't contain the paths and they are needed)
+     */
+    public DistanceStore load(boolean withPaths, int unreachableDistance) {
+        if (!isSupported() || !Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            boolean valid = header.getInt() == MAGIC && header.getInt() == VERSION && header.getInt() == mapRows
+                    && header.getInt() == mapCols && header.getInt() == numOfCells;
+            boolean hasPaths = header.get() != 0;
+            if (!valid || (withPaths && !hasPaths) || channel.size() != getFileSize(hasPaths)) {
+                return null;
+            }
+
+            // the mappings stay valid after the channel is closed
+            MappedByteBuffer distances = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 2 * tableSize);
+            mappedNextCells = withPaths
+                    ? channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + 2 * tableSize,
+                            (long) Long.BYTES * numOfNextCellWords)
+                    : null;
+            return new MappedDistanceTable(distances.asCharBuffer(), components, unreachableDistance);
+        } catch (IOException e) {
+            System.err.println("Couldn't read the preprocessing cache " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+        Copies the next cells of the loaded file to the table
+     */
+    public void loadPaths(NextCellTable nextCells) {
+        nextCells.readFrom(mappedNextCells.asLongBuffer());
+        mappedNextCells = null;
+    }
+
+    /*
+        Writes the computed distances and next cells (null if they are not stored) to the cache directory.
+        The file is written under a temporary name first, so concurrent runs never see a partial file.
+     */
+    public void save(DistanceTable distanceTable, NextCellTable nextCells) {
+        if (!isSupported()) {
+            return;
+        }
+        boolean hasPaths = nextCells != null;
+        Path tempFile = null;
+        try {
+            Files.createDirectories(file.getParent());
+            tempFile = Files.createTempFile(file.getParent(), "preprocessing", ".tmp");
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, getFileSize(hasPaths));
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(mapRows).putInt(mapCols).putInt(numOfCells);
+                buffer.put((byte) (hasPaths ? 1 : 0));
+
+                distanceTable.writeTo(buffer.slice().asCharBuffer());
+                if (hasPaths) {
+                    buffer.position((int) (HEADER_SIZE + 2 * tableSize));
+                    nextCells.writeTo(buffer.slice().asLongBuffer());
+                }
+                buffer.force();
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Couldn't write the preprocessing cache " + file + ": " + e.getMessage());
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private long getFileSize(boolean hasPaths) {
+        return HEADER_SIZE + 2 * tableSize + (hasPaths ? (long) Long.BYTES * numOfNextCellWords : 0);
+    }
+
+    /*
+        SHA-256 of the size and the walls of the map, as a hex string
+     */
+    private static String getFingerprint(int mapRows, int mapCols) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ByteBuffer.allocate(2 * Integer.BYTES).putInt(mapRows).putInt(mapCols).array());
+            byte[] walls = new byte[mapRows * mapCols];
+            for (int row = 0; row < mapRows; row++) {
+                for (int col = 0; col < mapCols; col++) {
+                    walls[row * mapCols + col] = (byte) (StateUtils.cellIsWall(row, col) ? 1 : 0);
+                }
+            }
+            digest.update(walls);
+
+            StringBuilder fingerprint = new StringBuilder();
+            for (byte b : digest.digest()) {
+                fingerprint.append(String.format("%02x", b));
+            }
+            return fingerprint.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package searchclient;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/*
+    Hierarchical (HPA*-like) distances: the free cells are split into regions, the corridors (connected cells of
+    width 1) and the rooms (connected remaining cells). The cells of a region next to another region are its entrances.
+
+    Only two small tables are precomputed:
+        - the distances inside each region from each of its entrances (BFS that doesn't leave the region)
+        - the real distances between all pairs of entrances (Dijkstra over the abstract graph, whose edges are
+          the distances inside the regions and the steps between neighbouring entrances of different regions)
+    A shortest path between two regions leaves the start region through one of its entrances and enters the end
+    region through one of its entrances, so
+        d(s, e) = min over the entrances a of R(s) and b of R(e) of local(s, a) + d(a, b) + local(b, e).
+    The queries inside a single region (the path may leave the region there) and the queries of the cells whose
+    distance maps are known anyway (the goals) are answered by the lazy store. The paths are derived from these
+    distances (like in DistanceEngine.GRADIENT), which refines the abstract path into cells.
+ */
+public class RegionGraph implements DistanceStore {
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final LazyDistanceStore exactDistances;
+    private final int unreachableDistance;
+    private final int numOfCells;
+
+    private final int[] regionOf;
+    /*
+     * Index of each cell among the cells of its region
+     */
+    private final int[] localIndex;
+    private final int[][] regionEntrances;
+    /*
+     * Distances inside the region from each entrance, by localIndex of the cells of its region
+     */
+    private final int[][] localDistances;
+    /*
+     * Real distances between the entrances, kept flat by (entrance * numOfEntrances + entrance)
+     */
+    private final int[] entranceDistances;
+    private final int numOfEntrances;
+
+    /*
+        cellIndex - free-cell index of each cell kept flat by (row * mapCols + col), -1 for walls
+        cellRows, cellCols - coordinates of each free cell
+     */
+    public RegionGraph(int mapRows, int mapCols, int[] cellIndex, int[] cellRows, int[] cellCols,
+                       LazyDistanceStore exactDistances, int unreachableDistance) {
+        this.exactDistances = exactDistances;
+        this.unreachableDistance = unreachableDistance;
+        this.numOfCells = cellRows.length;
+
+        int[] neighbours = new int[numOfCells * 4];
+        for (int cell = 0; cell < numOfCells; cell++) {
+            for (int direction = 0; direction < 4; direction++) {
+                int row = cellRows[cell] + NextCellTable.DIRECTIONS[direction].agentRowDelta;
+                int col = cellCols[cell] + NextCellTable.DIRECTIONS[direction].agentColDelta;
+                boolean outOfBounds = row < 0 || row >= mapRows || col < 0 || col >= mapCols;
+                neighbours[cell * 4 + direction] = outOfBounds ? -1 : cellIndex[row * mapCols + col];
+            }
+        }
+
+        // regions: connected cells of the same kind (corridor or room)
+        boolean[] corridor = new boolean[numOfCells];
+        for (int cell = 0; cell < numOfCells; cell++) {
+            corridor[cell] = isCorridorCell(cell, neighbours, cellRows, cellCols, cellIndex, mapCols);
+        }
+        regionOf = new int[numOfCells];
+        localIndex = new int[numOfCells];
+        Arrays.fill(regionOf, -1);
+        int[] queue = new int[numOfCells];
+        int[] regionSizes = new int[numOfCells];
+        int numOfRegions = 0;
+        for (int cell = 0; cell < numOfCells; cell++) {
+            if (regionOf[cell] >= 0) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            regionOf[cell] = numOfRegions;
+            queue[tail++] = cell;
+            while (head < tail) {
+                int current = queue[head++];
+                localIndex[current] = regionSizes[numOfRegions]++;
+                for (int direction = 0; direction < 4; direction++) {
+                    int adjCell = neighbours[current * 4 + direction];
+                    if (adjCell >= 0 && regionOf[adjCell] < 0 && corridor[adjCell] == corridor[cell]) {
+                        regionOf[adjCell] = numOfRegions;
+                        queue[tail++] = adjCell;
+                    }
+                }
+            }
+            numOfRegions++;
+        }
+
+        // entrances: cells next to a cell of another region
+        int[] entranceOf = new int[numOfCells];
+        Arrays.fill(entranceOf, -1);
+        int[] entranceCells = new int[numOfCells];
+        int[] numOfRegionEntrances = new int[numOfRegions];
+        int entrances = 0;
+        for (int cell = 0; cell < numOfCells; cell++) {
+            for (int direction = 0; direction < 4; direction++) {
+                int adjCell = neighbours[cell * 4 + direction];
+                if (adjCell >= 0 && regionOf[adjCell] != regionOf[cell]) {
+                    entranceOf[cell] = entrances;
+                    entranceCells[entrances++] = cell;
+                    numOfRegionEntrances[regionOf[cell]]++;
+                    break;
+                }
+            }
+        }
+        numOfEntrances = entrances;
+        regionEntrances = new int[numOfRegions][];
+        for (int region = 0; region < numOfRegions; region++) {
+            regionEntrances[region] = new int[numOfRegionEntrances[region]];
+        }
+        Arrays.fill(numOfRegionEntrances, 0);
+        for (int entrance = 0; entrance < numOfEntrances; entrance++) {
+            int region = regionOf[entranceCells[entrance]];
+            regionEntrances[region][numOfRegionEntrances[region]++] = entrance;
+        }
+
+        // distances inside the regions from each entrance
+        localDistances = new int[numOfEntrances][];
+        for (int entrance = 0; entrance < numOfEntrances; entrance++) {
+            int startCell = entranceCells[entrance];
+            int region = regionOf[startCell];
+            int[] distances = new int[regionSizes[region]];
+            Arrays.fill(distances, UNREACHABLE);
+            distances[localIndex[startCell]] = 0;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = startCell;
+            while (head < tail) {
+                int current = queue[head++];
+                int distance = distances[localIndex[current]] + 1;
+                for (int direction = 0; direction < 4; direction++) {
+                    int adjCell = neighbours[current * 4 + direction];
+                    if (adjCell >= 0 && regionOf[adjCell] == region && distances[localIndex[adjCell]] == UNREACHABLE) {
+                        distances[localIndex[adjCell]] = distance;
+                        queue[tail++] = adjCell;
+                    }
+                }
+            }
+            localDistances[entrance] = distances;
+        }
+
+        // distances between the entrances over the abstract graph
+        if (numOfEntrances > DistanceTable.MAX_COMPONENT_SIZE) {
+            throw new IllegalArgumentException("Too many region entrances for the region graph: " + numOfEntrances);
+        }
+        entranceDistances = new int[numOfEntrances * numOfEntrances];
+        Arrays.fill(entranceDistances, UNREACHABLE);
+        PriorityQueue<Long> frontier = new PriorityQueue<>();
+        for (int source = 0; source < numOfEntrances; source++) {
+            int offset = source * numOfEntrances;
+            entranceDistances[offset + source] = 0;
+            frontier.add((long) source);
+            while (!frontier.isEmpty()) {
+                long item = frontier.poll();
+                int entrance = (int) item;
+                int distance = (int) (item >>> 32);
+                if (distance > entranceDistances[offset + entrance]) {
+                    continue;
+                }
+                int cell = entranceCells[entrance];
+                for (int other : regionEntrances[regionOf[cell]]) {
+                    relax(frontier, offset, other, distance + localDistances[entrance][localIndex[entranceCells[other]]]);
+                }
+                for (int direction = 0; direction < 4; direction++) {
+                    int adjCell = neighbours[cell * 4 + direction];
+                    if (adjCell >= 0 && regionOf[adjCell] != regionOf[cell]) {
+                        relax(frontier, offset, entranceOf[adjCell], distance + 1);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getDistance(int startCell, int endCell) {
+        int startRegion = regionOf[startCell];
+        int endRegion = regionOf[endCell];
+        if (startRegion == endRegion || exactDistances.isCached(startCell) || exactDistances.isCached(endCell)) {
+            return exactDistances.getDistance(startCell, endCell);
+        }
+
+        int minDistance = Integer.MAX_VALUE;
+        for (int startEntrance : regionEntrances[startRegion]) {
+            int startDistance = localDistances[startEntrance][localIndex[startCell]];
+            int offset = startEntrance * numOfEntrances;
+            for (int endEntrance : regionEntrances[endRegion]) {
+                int entranceDistance = entranceDistances[offset + endEntrance];
+                if (entranceDistance == UNREACHABLE) {
+                    continue;
+                }
+                int distance = startDistance + entranceDistance + localDistances[endEntrance][localIndex[endCell]];
+                minDistance = Math.min(minDistance, distance);
+            }
+        }
+        return minDistance == Integer.MAX_VALUE ? unreachableDistance : minDistance;
+    }
+
+    public int getNumOfEntrances() {
+        return numOfEntrances;
+    }
+
+    private void relax(PriorityQueue<Long> frontier, int offset, int entrance, int distance) {
+        if (distance < entranceDistances[offset + entrance]) {
+            entranceDistances[offset + entrance] = distance;
+            frontier.add(((long) distance << 32) | entrance);
+        }
+    }
+
+    /*
+        A corridor cell has at most 2 free neighbours and, if they are not opposite, the cell between them is a wall
+        (a bend of the corridor, not a corner of a room)
+     */
+    private static boolean isCorridorCell(int cell, int[] neighbours, int[] cellRows, int[] cellCols,
+                                          int[] cellIndex, int mapCols) {
+        int numOfFree = 0;
+        int rowDelta = 0;
+        int colDelta = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            if (neighbours[cell * 4 + direction] >= 0) {
+                numOfFree++;
+                rowDelta += NextCellTable.DIRECTIONS[direction].agentRowDelta;
+                colDelta += NextCellTable.DIRECTIONS[direction].agentColDelta;
+            }
+        }
+        if (numOfFree > 2) {
+            return false;
+        }
+        if (numOfFree < 2 || (rowDelta == 0 && colDelta == 0)) {
+            return true;
+        }
+        // two neighbours at a right angle, (rowDelta, colDelta) points to the cell between them
+        return cellIndex[(cellRows[cell] + rowDelta) * mapCols + cellCols[cell] + colDelta] < 0;
+    }
+}
@@ -123,6 +123,121 @@ public class SearchClient
         return new State(agentRows, agentCols, agentColors, walls, boxes, boxColors, goals);
     }
 
+    /*
+        Applies the options that are not related to the search strategy and returns the remaining arguments.
+        The distance engine is selected by the size of the map and the max heap unless one of these is given:
+        -fulldistances  - store all the distances and the shortest paths (fastest)
+        -gradientpaths  - don't store the shortest paths, derive them from the distances (less memory)
+        -lazydistances  - compute the distances from the goals up front and the other ones on demand, in a bounded cache
+        -landmarks <k>  - like -lazydistances, and the heuristics use lower bounds from k landmarks (for the huge maps)
+        -regions        - like -lazydistances, and the distances between rooms and corridors go through their entrances
+        Other options:
+        -threads <n>    - number of threads used by the preprocessing (all cores by default)
+        -cache <dir>    - keep the computed distances and paths in the directory and reuse them for the same map
+        -deltanodes <k> - the conflict searches keep delta-encoded nodes with a whole state every k levels (less memory)
+        -offheap        - the conflict searches keep their nodes in direct buffers outside of the heap
+        -fingerprints   - the conflict searches detect the duplicates by the 64-bit state keys only (may prune a state)
+        -bitstate <mb>  - the conflict searches detect the duplicates by a Bloom filter of mb megabytes (may prune a state)
+        -decompose      - the conflict searches choose the actions of the agents one at a time (operator decomposition)
+     */
+    public static String[] parseOptions(String[] args)
+    {
+        ArrayList<String> remainingArgs = new ArrayList<>(args.length);
+        for (int i = 0; i < args.length; i++)
+        {
+            String arg = args[i];
+            switch (arg.toLowerCase(Locale.ROOT))
+            {
+                case "-fulldistances":
+                    LevelMetadata.DISTANCE_ENGINE = DistanceEngine.FULL;
+                    break;
+                case "-gradientpaths":
+                    LevelMetadata.DISTANCE_ENGINE = DistanceEngine.GRADIENT;
+                    break;
+                case "-lazydistances":
+                    LevelMetadata.DISTANCE_ENGINE = DistanceEngine.LAZY;
+                    break;
+                case "-regions":
+                    LevelMetadata.DISTANCE_ENGINE = DistanceEngine.REGIONS;
+                    break;
+                case "-threads":
+                    try
+                    {
+                        LevelMetadata.PREPROCESSING_THREADS = Integer.parseUnsignedInt(args[++i]);
+                    }
+                    catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+                    {
+                        System.err.println("Couldn't parse -threads argument as integer, using all cores.");
+                    }
+                    break;
+                case "-landmarks":
+                    LevelMetadata.DISTANCE_ENGINE = DistanceEngine.LANDMARKS;
+                    try
+                    {
+                        int landmarks = Integer.parseInt(args[++i]);
+                        if (landmarks < 1)
+                        {
+                            throw new NumberFormatException("Not a positive number of landmarks: " + landmarks);
+                        }
+                        LevelMetadata.LANDMARKS = landmarks;
+                    }
+                    catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+                    {
+                        System.err.println("Couldn't parse -landmarks argument as integer, using default.");
+                    }
+                    break;
+                case "-deltanodes":
+                    try
+                    {
+                        SearchUtils.CHECKPOINT_INTERVAL = Integer.parseUnsignedInt(args[++i]);
+                    }
+                    catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+                    {
+                        System.err.println("Couldn't parse -deltanodes argument as integer, whole states are kept.");
+                    }
+                    break;
+                case "-offheap":
+                    SearchUtils.OFF_HEAP_NODES = true;
+                    break;
+                case "-fingerprints":
+                    SearchUtils.DUPLICATE_DETECTION = DuplicateDetection.FINGERPRINTS;
+                    break;
+                case "-bitstate":
+                    SearchUtils.DUPLICATE_DETECTION = DuplicateDetection.BITSTATE;
+                    try
+                    {
+                        int megabytes = Integer.parseInt(args[++i]);
+                        if (megabytes < 1)
+                        {
+                            throw new NumberFormatException("Not a positive size: " + megabytes);
+                        }
+                        SearchUtils.BITSTATE_MEGABYTES = megabytes;
+                    }
+                    catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+                    {
+                        System.err.println("Couldn't parse -bitstate argument as integer, using default.");
+                    }
+                    break;
+                case "-decompose":
+                    SearchUtils.OPERATOR_DECOMPOSITION = true;
+                    break;
+                case "-cache":
+                    if (i + 1 < args.length)
+                    {
+                        LevelMetadata.PREPROCESSING_CACHE_DIR = args[++i];
+                    }
+                    else
+                    {
+                        System.err.println("Missing -cache directory, the preprocessing cache is not used.");
+                    }
+                    break;
+                default:
+                    remainingArgs.add(arg);
+            }
+        }
+        return remainingArgs.toArray(new String[0]);
+    }
+
     public static Action[][] search(State initialState, Frontier frontier)
     {
         System.err.format("Starting %s.\n", frontier.getName());
@@ -146,6 +261,9 @@ public class SearchClient
         BufferedReader serverMessages = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII));
         State initialState = SearchClient.parseLevel(serverMessages);
 
+        // Apply the preprocessing options, the remaining arguments select the search strategy.
+        args = SearchClient.parseOptions(args);
+
         // Select search strategy.
         Frontier frontier;
         if (args.length > 0)
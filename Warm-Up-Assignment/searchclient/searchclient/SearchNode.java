@@ -0,0 +1,55 @@
+package searchclient;
+
+/*
+    Delta-encoded node of SearchUtils.aStarSearch(...): only the parent, the joint action that led here, g and f
+    are kept. Every CHECKPOINT_INTERVAL levels the node keeps its whole state
+    (a checkpoint), the states of the other nodes are rebuilt by replaying the joint actions from the nearest
+    checkpoint above them (see SearchNodeStates).
+ */
+public class SearchNode {
+
+    final SearchNode parent;
+    final Action[] jointAction;
+    final int g;
+    final int f;
+    /*
+     * Detached copy of the state (no parent), null unless the node is a checkpoint
+     */
+    private final State checkpoint;
+
+    /*
+        Root node, always a checkpoint
+     */
+    public SearchNode(State state, int f) {
+        this.parent = null;
+        this.jointAction = null;
+        this.g = 0;
+        this.f = f;
+        this.checkpoint = state.detach();
+    }
+
+    /*
+        state - the state reached from the state of the parent by its joint action
+     */
+    public SearchNode(SearchNode parent, State state, int f, int checkpointInterval) {
+        this.parent = parent;
+        this.jointAction = state.jointAction;
+        this.g = parent.g + 1;
+        this.f = f;
+        this.checkpoint = this.g % checkpointInterval == 0 ? state.detach() : null;
+    }
+
+    public State getCheckpoint() {
+        return checkpoint;
+    }
+
+    public Action[][] extractPlan() {
+        Action[][] plan = new Action[this.g][];
+        SearchNode node = this;
+        while (node.jointAction != null) {
+            plan[node.g - 1] = node.jointAction;
+            node = node.parent;
+        }
+        return plan;
+    }
+}
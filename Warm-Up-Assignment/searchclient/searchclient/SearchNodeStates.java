@@ -0,0 +1,59 @@
+package searchclient;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+    Rebuilds the states of the delta-encoded search nodes. The state of a node is replayed from the nearest checkpoint
+    (or cached state) above it, at most SearchNode checkpoint interval - 1 joint actions. The recently rebuilt states
+    are kept in a small LRU cache, the parent of a popped node has usually just been expanded. The cached states
+    are detached from their parents, so the cache never keeps whole paths of states alive.
+ */
+public class SearchNodeStates {
+
+    private static final int CACHE_SIZE = 1024;
+
+    private final Map<SearchNode, State> cache = new LinkedHashMap<>(2 * CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SearchNode, State> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private final ArrayDeque<SearchNode> replayed = new ArrayDeque<>();
+
+    public State getState(SearchNode node) {
+        State state = node.getCheckpoint();
+        if (state != null) {
+            return state;
+        }
+        state = cache.get(node);
+        if (state != null) {
+            return state;
+        }
+
+        SearchNode ancestor = node;
+        while (state == null) {
+            replayed.push(ancestor);
+            ancestor = ancestor.parent;
+            state = ancestor.getCheckpoint();
+            if (state == null) {
+                state = cache.get(ancestor);
+            }
+        }
+        while (!replayed.isEmpty()) {
+            state = new State(state, replayed.pop().jointAction);
+        }
+        cache.put(node, state.detach());
+        return state;
+    }
+
+    /*
+        Caches the state of a node which has just been created from it
+     */
+    public void put(SearchNode node, State state) {
+        if (node.getCheckpoint() == null) {
+            cache.put(node, state.detach());
+        }
+    }
+}
@@ -3,11 +3,30 @@ package searchclient;
 import java.util.Arrays;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.PriorityQueue;
 
 
 public class SearchUtils {
 
+    /*
+     * Levels between the checkpoints of the delta-encoded nodes of aStarSearch(...), 0 = whole states are kept
+     */
+    public static int CHECKPOINT_INTERVAL = 0;
+    /*
+     * The conflict searches keep their nodes outside of the heap (OffHeapNodeStore)
+     */
+    public static boolean OFF_HEAP_NODES = false;
+    /*
+     * aStarSearch(...) expands the states by operator decomposition (State.getDecomposedStates())
+     */
+    public static boolean OPERATOR_DECOMPOSITION = false;
+    public static DuplicateDetection DUPLICATE_DETECTION = DuplicateDetection.EXACT;
+    /*
+     * Size of the Bloom filter of DuplicateDetection.BITSTATE
+     */
+    public static int BITSTATE_MEGABYTES = 64;
+
     /*
      * Return the shortest path between agent - box - goal, where the distance all together is the
      * shortest agent - box and box - goals paths are separated by [-1, -1].
@@ -43,10 +62,20 @@ public class SearchUtils {
 
     public static Action[][] aStarSearch(State initialState, State goalState, int prioritizedAgent,Conflict conflict) {
         HeuristicAStar.setGoalStateAndAgentAndConflict(goalState,prioritizedAgent,conflict);
-        Frontier frontier = new FrontierBestFirst(new HeuristicAStar(initialState));
+        // a box of the goal state on a dead cell must be allowed to get there
+        boolean pruneDeadCells = !LevelMetadata.hasBoxOnDeadCell(goalState);
+        if (OFF_HEAP_NODES) {
+            return aStarSearchOffHeap(initialState, goalState, pruneDeadCells);
+        }
+        if (CHECKPOINT_INTERVAL > 0) {
+            return aStarSearchDeltaNodes(initialState, goalState, pruneDeadCells);
+        }
+        Frontier frontier = new FrontierBestFirst(new HeuristicAStar(initialState, OPERATOR_DECOMPOSITION));
         frontier.add(initialState);
-        HashSet<State> expanded = new HashSet<>();
+        StateSet expanded = DUPLICATE_DETECTION.create(true);
         expanded.add(initialState);
+        // the intermediate states of the operator decomposition by their number of assigned agents
+        StateSet[] intermediates = new StateSet[initialState.numOfAgents];
 
         while (true) {
 
@@ -60,16 +89,95 @@ public class SearchUtils {
                 return state.extractPlan();
             }
 
-            ArrayList<State> children = state.getExpandedStates();
+            ArrayList<State> children = OPERATOR_DECOMPOSITION ? state.getDecomposedStates(pruneDeadCells)
+                    : state.getExpandedStates(pruneDeadCells);
             for (State child : children) {
-                if (!expanded.contains(child)) {
+                if (getStateSet(expanded, intermediates, child).add(child)) {
                     frontier.add(child);
-                    expanded.add(child);
                 }
             }
         }
     }
 
+    /*
+     * The intermediate states have more packed ints than the regular ones, one more pair per assigned agent,
+     * so each number of assigned agents gets its own set
+     */
+    private static StateSet getStateSet(StateSet expanded, StateSet[] intermediates, State state) {
+        if (!state.isIntermediate()) {
+            return expanded;
+        }
+        int assignedAgents = state.getAssignedAgents();
+        if (intermediates[assignedAgents] == null) {
+            intermediates[assignedAgents] = DUPLICATE_DETECTION.create(true);
+        }
+        return intermediates[assignedAgents];
+    }
+
+    /*
+     * Same search as aStarSearch(...), but the frontier and the closed set keep delta-encoded SearchNodes instead
+     * of whole states. f is evaluated once per node. The closed set keeps the states packed (ClosedSet), so no
+     * state has to be rebuilt to detect a duplicate.
+     */
+    private static Action[][] aStarSearchDeltaNodes(State initialState, State goalState, boolean pruneDeadCells) {
+        Heuristic heuristic = new HeuristicAStar(initialState);
+        SearchNodeStates states = new SearchNodeStates();
+        PriorityQueue<SearchNode> frontier = new PriorityQueue<>(65536, Comparator.comparingInt(node -> node.f));
+        StateSet expanded = DUPLICATE_DETECTION.create(false);
+        SearchNode root = new SearchNode(initialState, heuristic.f(initialState));
+        frontier.add(root);
+        expanded.add(initialState);
+
+        while (!frontier.isEmpty()) {
+            SearchNode node = frontier.poll();
+            State state = states.getState(node);
+
+            if (state.equals(goalState)) {
+                return node.extractPlan();
+            }
+
+            ArrayList<State> children = state.getExpandedStates(pruneDeadCells);
+            for (State child : children) {
+                if (!expanded.add(child)) {
+                    continue;
+                }
+                SearchNode childNode = new SearchNode(node, child, heuristic.f(child), CHECKPOINT_INTERVAL);
+                states.put(childNode, child);
+                frontier.add(childNode);
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Same search as aStarSearch(...), but the nodes are kept off-heap (OffHeapNodeStore) and the frontier is
+     * a queue of node numbers. Only the state being expanded and its children are objects on the heap.
+     */
+    private static Action[][] aStarSearchOffHeap(State initialState, State goalState, boolean pruneDeadCells) {
+        Heuristic heuristic = new HeuristicAStar(initialState);
+        OffHeapNodeStore nodes = new OffHeapNodeStore(initialState);
+        NodeQueue frontier = new NodeQueue();
+        frontier.add(heuristic.f(initialState), nodes.add(initialState, -1));
+
+        while (!frontier.isEmpty()) {
+            int node = frontier.poll();
+            State state = nodes.getState(node);
+
+            if (state.equals(goalState)) {
+                return nodes.extractPlan(node);
+            }
+
+            ArrayList<State> children = state.getExpandedStates(pruneDeadCells);
+            for (State child : children) {
+                int childNode = nodes.add(child, node);
+                if (childNode >= 0) {
+                    frontier.add(heuristic.f(child), childNode);
+                }
+            }
+        }
+        return null;
+    }
+
     /*
      * If there is box goal:
      *  Return [agent][boxRow, boxCol, boxGoalRow, boxGoalCol], which are the coordinates of
@@ -105,17 +213,14 @@ public class SearchUtils {
      * */
     private static int[][] findBoxesGoals(State state) {
         int[][] boxesGoals = new int[LevelMetadata.MAX_NUM_OF_DISTINCT_BOXES][0];
-        for (int boxRow = 0; boxRow < state.boxes.length; boxRow++) {
-            for (int boxCol = 0; boxCol < state.boxes[boxRow].length; boxCol++) {
-                char box = state.boxes[boxRow][boxCol];
-                if (box == 0) {
-                    continue;
-                }
-                int boxInt = StateUtils.boxCharToInt(box);
-                int[] boxGoalCoordinates = getBoxMinGoal(state, box, boxRow, boxCol);
-                if (boxGoalCoordinates != null && boxGoalCoordinates.length == 2) {
-                    boxesGoals[boxInt] = addBoxGoal(boxesGoals[boxInt], boxRow, boxCol, boxGoalCoordinates);
-                }
+        for (int i = 0; i < state.getNumOfBoxes(); i++) {
+            char box = state.getBox(i);
+            int boxRow = state.getBoxRow(i);
+            int boxCol = state.getBoxCol(i);
+            int boxInt = StateUtils.boxCharToInt(box);
+            int[] boxGoalCoordinates = getBoxMinGoal(state, box, boxRow, boxCol);
+            if (boxGoalCoordinates != null && boxGoalCoordinates.length == 2) {
+                boxesGoals[boxInt] = addBoxGoal(boxesGoals[boxInt], boxRow, boxCol, boxGoalCoordinates);
             }
         }
         return boxesGoals;
@@ -130,6 +235,7 @@ public class SearchUtils {
      * */
     private static int[] chooseBox(State state, int agent, int[][] boxesGoals) {
         int minDistance = LevelMetadata.MAP_AREA;
+        int minLevel = Integer.MAX_VALUE;
         Color agentColor = State.AGENT_COLORS[agent];
         char[] allowedBoxes = LevelMetadata.BOXES_PER_COLOR[agentColor.getValue()];
         int agentRow = state.agentRows[agent];
@@ -141,14 +247,17 @@ public class SearchUtils {
             for (int j = 0; j < coordinates.length; j += 4) {
                 int boxRow = coordinates[j];
                 int boxCol = coordinates[j+1];
-                if (LevelMetadata.getPath(agentRow, agentCol, boxRow, boxCol) == null) {
+                if (LevelMetadata.getDistance(agentRow, agentCol, boxRow, boxCol) >= LevelMetadata.MAP_AREA) {
                     continue;
                 }
 
                 int distance = (int)(0.4 * LevelMetadata.getDistance(agentRow, agentCol, boxRow, boxCol) +
                         0.6 * getDistance(Arrays.copyOfRange(coordinates, j, j+4)));
-                if (distance < minDistance) {
+                // ties go to the goal which unblocks the most goals after it
+                int level = LevelMetadata.GOAL_DEPENDENCIES.getLevel(coordinates[j+2], coordinates[j+3]);
+                if (distance < minDistance || (distance == minDistance && level < minLevel)) {
                     minDistance = distance;
+                    minLevel = level;
                     chosenBox = Arrays.copyOfRange(coordinates, j, j+4);
                 }
             }
@@ -159,7 +268,8 @@ public class SearchUtils {
 
     /*
      * Return the coordinates of the closest, free and relevant goal of the box. The choice is based
-     * on LevelMetadata.getDistance(...)
+     * on LevelMetadata.getDistance(...), the goals blocked by unfilled goals (LevelMetadata.GOAL_DEPENDENCIES)
+     * are skipped.
      */
     private static int[] getBoxMinGoal(State state, char box, int boxRow, int boxCol) {
         int[] boxGoals = LevelMetadata.BOX_GOALS_COORDINATES[StateUtils.boxCharToInt(box)];
@@ -170,7 +280,7 @@ public class SearchUtils {
         for (int i=0; i<boxGoals.length; i += 2) {
             int goalRow = boxGoals[i];
             int goalCol = boxGoals[i+1];
-            if (LevelMetadata.getPath(boxRow, boxCol, goalRow, goalCol) == null) {
+            if (LevelMetadata.getDistance(boxRow, boxCol, goalRow, goalCol) >= LevelMetadata.MAP_AREA) {
                 continue;
             }
 
@@ -180,6 +290,9 @@ public class SearchUtils {
             if (StateUtils.boxAt(state, goalRow, goalCol) == box){
                 continue;
             }
+            if (LevelMetadata.GOAL_DEPENDENCIES.isBlocked(state, goalRow, goalCol)) {
+                continue;
+            }
 
             int distance = LevelMetadata.getDistance(boxRow, boxCol, goalRow, goalCol);
             if (distance < minDistance) {
@@ -207,7 +320,7 @@ public class SearchUtils {
             int goalCol = agentGoals[i+1];
             int agentRow = state.agentRows[agent];
             int agentCol = state.agentCols[agent];
-            if (LevelMetadata.getPath(agentRow, agentCol, goalRow, goalCol) == null) {
+            if (LevelMetadata.getDistance(agentRow, agentCol, goalRow, goalCol) >= LevelMetadata.MAP_AREA) {
                 continue;
             }
 
@@ -241,14 +354,14 @@ public class SearchUtils {
         int goalRow = goals[2];
         int goalCol = goals[3];
 
-        int[] agentBoxPath = LevelMetadata.getPath(agentRow, agentCol, boxRow, boxCol);
-        int[] boxGoalPath = LevelMetadata.getPath(boxRow, boxCol, goalRow, goalCol);
-        int agentBoxLen = agentBoxPath.length;
-        int boxGoalLen = boxGoalPath.length;
+        // both paths are written directly to the result, the box cell of the first one is replaced by the separator
+        int agentBoxLen = LevelMetadata.getPathSize(LevelMetadata.getDistance(agentRow, agentCol, boxRow, boxCol));
+        int boxGoalLen = LevelMetadata.getPathSize(LevelMetadata.getDistance(boxRow, boxCol, goalRow, goalCol));
         int[] path = new int[agentBoxLen + boxGoalLen];
-        System.arraycopy(agentBoxPath, 0, path, 0, agentBoxLen - 2);
-        System.arraycopy(new int[]{-1, -1}, 0, path, agentBoxLen - 2, 2);
-        System.arraycopy(boxGoalPath, 0, path, agentBoxLen, boxGoalLen);
+        LevelMetadata.fillPath(agentRow, agentCol, boxRow, boxCol, path, 0);
+        path[agentBoxLen - 2] = -1;
+        path[agentBoxLen - 1] = -1;
+        LevelMetadata.fillPath(boxRow, boxCol, goalRow, goalCol, path, agentBoxLen);
         return path;
     }
 
@@ -13,15 +13,48 @@ public class State {
     public static Color[] AGENT_COLORS;
     public static Color[] BOX_COLORS;
 
+    /*
+     * Number of columns of the map, the boxes are kept by cell = row * MAP_COLS + col
+     */
+    private static int MAP_COLS;
+    private static final int LETTER_BITS = 8;
+    private static final int LETTER_MASK = (1 << LETTER_BITS) - 1;
+    /*
+     * Zobrist keys, ZOBRIST_KEYS[object][cell] where the objects are the agents 0-9 and then the boxes 'A'-'Z'.
+     * The key of a state is the XOR of the keys of all its objects on their cells, so a child only XORs out
+     * the old and in the new cells of the objects moved by its joint action.
+     */
+    private static final int NUM_OF_OBJECTS = 10 + 26;
+    private static final long ZOBRIST_SEED = 1;
+    private static long[][] ZOBRIST_KEYS;
     public int[] agentRows;
     public int[] agentCols;
-    public char[][] boxes;
+    /*
+     * Boxes sorted by their cells, each packed as (cell << LETTER_BITS | letter).
+     * E.g. [(2 * MAP_COLS + 3) << 8 | 'A', ...] means that box 'A' is at (2,3).
+     * The array is shared with the parent (or the copied state) until one of the boxes is moved or set,
+     * see ownBoxes(). Both states are marked as sharing it, so whichever of them changes it first copies it.
+     * So the move-only children share it and a push or pull copies it once.
+     */
+    private int[] boxes;
+    private boolean sharedBoxes;
     public final int numOfAgents;
     public final State parent;
     public final Action[] jointAction;
 
     private final int g;
-    private int hash = 0;
+    private long key;
+    /*
+     * Intermediate state of the operator decomposition (getDecomposedStates()): the actions of the agents
+     * 0 .. assignedAgents - 1 are chosen and applied, the other agents still do NoOp. 0 for the regular states.
+     * The parent is the regular state the joint action starts from, applicableActions are its applicable actions.
+     * The later agents depend on the start cells and actions of the assigned agents too (their actions are checked
+     * against the start state), so they are a part of the identity of an intermediate state: decompositionKey
+     * is XORed to its key and they are packed after its agents and boxes.
+     */
+    private int assignedAgents;
+    private Action[][] applicableActions;
+    private long decompositionKey;
 
     public State(int[] agentRows, int[] agentCols, Color[] agentColors, boolean[][] walls,
                  char[][] boxes, Color[] boxColors, char[][] goals
@@ -30,25 +63,37 @@ public class State {
         WALLS = walls;
         AGENT_COLORS = agentColors;
         BOX_COLORS = boxColors;
+        MAP_COLS = walls[0].length;
 
         this.agentRows = agentRows;
         this.agentCols = agentCols;
-        this.boxes = boxes;
+        this.boxes = packBoxes(boxes);
         this.numOfAgents = agentRows.length;
         this.parent = null;
         this.jointAction = null;
 
         this.g = 0;
+        initZobristKeys(walls.length * MAP_COLS);
+        for (int agent = 0; agent < numOfAgents; agent++) {
+            this.key ^= ZOBRIST_KEYS[agent][agentRows[agent] * MAP_COLS + agentCols[agent]];
+        }
+        for (int box : this.boxes) {
+            this.key ^= getBoxKey(box >>> LETTER_BITS, (char) (box & LETTER_MASK));
+        }
     }
 
     public State(State state) {
+        this(state, 0);
+    }
+
+    private State(State state, int g) {
         this.agentRows = Arrays.copyOf(state.agentRows, state.agentRows.length);
         this.agentCols = Arrays.copyOf(state.agentCols, state.agentCols.length);
-        this.boxes = new char[state.boxes.length][];
-        for (int i = 0; i < state.boxes.length; i++) {
-            this.boxes[i] = Arrays.copyOf(state.boxes[i], state.boxes[i].length);
-        }
+        this.boxes = state.boxes;
+        this.sharedBoxes = true;
+        state.sharedBoxes = true;
         this.numOfAgents = state.numOfAgents;
+        this.key = state.key;
         this.parent = null;
 //        if (state.jointAction != null) {
 //            this.jointAction = Arrays.copyOf(state.jointAction, state.jointAction.length);
@@ -56,18 +101,18 @@ public class State {
 //            this.jointAction = null;
 //        }
         this.jointAction = null;
-        this.g = 0;
+        this.g = g;
     }
 
     public State(State parent, Action[] jointAction) {
         this.agentRows = Arrays.copyOf(parent.agentRows, parent.agentRows.length);
         this.agentCols = Arrays.copyOf(parent.agentCols, parent.agentCols.length);
-        this.boxes = new char[parent.boxes.length][];
-        for (int i = 0; i < parent.boxes.length; i++) {
-            this.boxes[i] = Arrays.copyOf(parent.boxes[i], parent.boxes[i].length);
-        }
+        this.boxes = parent.boxes;
+        this.sharedBoxes = true;
+        parent.sharedBoxes = true;
 
         this.numOfAgents = parent.numOfAgents;
+        this.key = parent.key;
         this.parent = parent;
         this.jointAction = Arrays.copyOf(jointAction, jointAction.length);
         this.g = parent.g + 1;
@@ -94,6 +139,184 @@ public class State {
         return this.g;
     }
 
+    /*
+        Returns a copy without the parent and the joint action, but with the same g
+     */
+    public State detach() {
+        return new State(this, this.g);
+    }
+
+    /*
+        Moves the agent to (row, col)
+     */
+    public void moveAgent(int agent, int row, int col) {
+        key ^= ZOBRIST_KEYS[agent][agentRows[agent] * MAP_COLS + agentCols[agent]] ^ ZOBRIST_KEYS[agent][row * MAP_COLS + col];
+        agentRows[agent] = row;
+        agentCols[agent] = col;
+    }
+
+    /*
+        Returns the box at (row, col), 0 if there is no box
+     */
+    public char boxAt(int row, int col) {
+        int index = findBox(row * MAP_COLS + col);
+        return index < 0 ? 0 : (char) (boxes[index] & LETTER_MASK);
+    }
+
+    public int getNumOfBoxes() {
+        return boxes.length;
+    }
+
+    /*
+        Coordinates and letter of the box number i, the boxes are ordered by row, then by col
+     */
+    public int getBoxRow(int i) {
+        return (boxes[i] >>> LETTER_BITS) / MAP_COLS;
+    }
+
+    public int getBoxCol(int i) {
+        return (boxes[i] >>> LETTER_BITS) % MAP_COLS;
+    }
+
+    public char getBox(int i) {
+        return (char) (boxes[i] & LETTER_MASK);
+    }
+
+    /*
+        Puts the box to (row, col), or removes the box from there if box is 0
+     */
+    public void setBox(int row, int col, char box) {
+        int cell = row * MAP_COLS + col;
+        int index = findBox(cell);
+        if (index >= 0) {
+            key ^= getBoxKey(cell, (char) (boxes[index] & LETTER_MASK));
+            if (box == 0) {
+                int[] newBoxes = new int[boxes.length - 1];
+                System.arraycopy(boxes, 0, newBoxes, 0, index);
+                System.arraycopy(boxes, index + 1, newBoxes, index, newBoxes.length - index);
+                boxes = newBoxes;
+                sharedBoxes = false;
+            } else {
+                ownBoxes();
+                boxes[index] = cell << LETTER_BITS | box;
+            }
+        } else if (box != 0) {
+            int insertAt = -index - 1;
+            int[] newBoxes = new int[boxes.length + 1];
+            System.arraycopy(boxes, 0, newBoxes, 0, insertAt);
+            newBoxes[insertAt] = cell << LETTER_BITS | box;
+            System.arraycopy(boxes, insertAt, newBoxes, insertAt + 1, boxes.length - insertAt);
+            boxes = newBoxes;
+            sharedBoxes = false;
+        }
+        if (box != 0) {
+            key ^= getBoxKey(cell, box);
+        }
+    }
+
+    /*
+        Moves the box from (fromRow, fromCol) to the free cell (toRow, toCol), keeping the boxes sorted in place
+     */
+    public void moveBox(int fromRow, int fromCol, int toRow, int toCol) {
+        int index = findBox(fromRow * MAP_COLS + fromCol);
+        if (index < 0) {
+            return;
+        }
+        ownBoxes();
+        char letter = (char) (boxes[index] & LETTER_MASK);
+        int toCell = toRow * MAP_COLS + toCol;
+        key ^= getBoxKey(fromRow * MAP_COLS + fromCol, letter) ^ getBoxKey(toCell, letter);
+        int box = toCell << LETTER_BITS | letter;
+        while (index + 1 < boxes.length && boxes[index + 1] < box) {
+            boxes[index] = boxes[index + 1];
+            index++;
+        }
+        while (index > 0 && boxes[index - 1] > box) {
+            boxes[index] = boxes[index - 1];
+            index--;
+        }
+        boxes[index] = box;
+    }
+
+    /*
+        Builds the 2D view of the boxes, e.g. getBoxGrid()[2][3] = 'A' means that box 'A' is at (2,3)
+     */
+    public char[][] getBoxGrid() {
+        char[][] grid = new char[WALLS.length][MAP_COLS];
+        for (int i = 0; i < boxes.length; i++) {
+            grid[getBoxRow(i)][getBoxCol(i)] = getBox(i);
+        }
+        return grid;
+    }
+
+    /*
+        Binary search of the box at the cell, returns its index or (-insertion point - 1) like Arrays.binarySearch
+     */
+    private int findBox(int cell) {
+        int low = 0;
+        int high = boxes.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleCell = boxes[middle] >>> LETTER_BITS;
+            if (middleCell < cell) {
+                low = middle + 1;
+            } else if (middleCell > cell) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /*
+        Copies the boxes shared with another state before they are changed (copy-on-write)
+     */
+    private void ownBoxes() {
+        if (sharedBoxes) {
+            boxes = Arrays.copyOf(boxes, boxes.length);
+            sharedBoxes = false;
+        }
+    }
+
+    private static long getBoxKey(int cell, char box) {
+        return ZOBRIST_KEYS[10 + box - 'A'][cell];
+    }
+
+    private static void initZobristKeys(int mapArea) {
+        if (ZOBRIST_KEYS != null && ZOBRIST_KEYS[0].length == mapArea) {
+            return;
+        }
+        Random random = new Random(ZOBRIST_SEED);
+        ZOBRIST_KEYS = new long[NUM_OF_OBJECTS][mapArea];
+        for (long[] objectKeys : ZOBRIST_KEYS) {
+            for (int cell = 0; cell < mapArea; cell++) {
+                objectKeys[cell] = random.nextLong();
+            }
+        }
+    }
+
+    private static int[] packBoxes(char[][] grid) {
+        int numOfBoxes = 0;
+        for (char[] row : grid) {
+            for (char box : row) {
+                if (box != 0) {
+                    numOfBoxes++;
+                }
+            }
+        }
+        int[] packed = new int[numOfBoxes];
+        int i = 0;
+        for (int row = 0; row < grid.length; row++) {
+            for (int col = 0; col < grid[row].length; col++) {
+                if (grid[row][col] != 0) {
+                    packed[i++] = (row * MAP_COLS + col) << LETTER_BITS | grid[row][col];
+                }
+            }
+        }
+        return packed;
+    }
+
     public boolean isGoalState() {
         for (int row = 1; row < GOALS.length - 1; row++) {
             for (int col = 1; col < GOALS[row].length - 1; col++) {
@@ -108,8 +331,11 @@ public class State {
         return true;
     }
 
-    public ArrayList<State> getExpandedStates() {
-        Action[][] applicableActions = StateExpandUtils.getApplicableActions(this);
+    /*
+        pruneDeadCells - see StateExpandUtils.getApplicableActions(...)
+     */
+    public ArrayList<State> getExpandedStates(boolean pruneDeadCells) {
+        Action[][] applicableActions = StateExpandUtils.getApplicableActions(this, pruneDeadCells);
         Action[] jointAction = new Action[numOfAgents];
         int[] actionsPermutation = new int[numOfAgents];
         ArrayList<State> expandedStates = new ArrayList<>(16);
@@ -127,6 +353,89 @@ public class State {
         return expandedStates;
     }
 
+    /*
+        Operator decomposition: the children assign an action to a single agent at a time, so the branching factor
+        is the number of actions of one agent instead of their product. The children of a regular state assign
+        agent 0, the children of an intermediate state the next agent, the child that assigns the last agent
+        is a regular state again. The applicability of the actions and the conflicts are checked against
+        the regular state the joint action starts from (the parent of the intermediate states), whose applicable
+        actions the intermediate states share, so the completed joint actions are exactly the ones of
+        getExpandedStates(). The agents with a single applicable action are assigned along the way.
+
+        The unassigned agents of an intermediate state do NoOp, so its joint action is valid, but it never equals
+        a regular state: a plan ends in the regular state completing it with NoOps. The intermediate states are
+        regular search nodes with the g of the completed joint action.
+     */
+    public ArrayList<State> getDecomposedStates(boolean pruneDeadCells) {
+        State start = this;
+        Action[][] startActions = this.applicableActions;
+        Action[] jointAction;
+        if (assignedAgents == 0) {
+            startActions = StateExpandUtils.getApplicableActions(this, pruneDeadCells);
+            jointAction = new Action[numOfAgents];
+            Arrays.fill(jointAction, Action.NoOp);
+        } else {
+            start = this.parent;
+            jointAction = Arrays.copyOf(this.jointAction, numOfAgents);
+        }
+
+        int agent = assignForcedActions(startActions, jointAction, assignedAgents);
+        ArrayList<State> expandedStates = new ArrayList<>(agent < numOfAgents ? startActions[agent].length : 1);
+        if (agent == numOfAgents) {
+            // no agent of the start state has a choice
+            expandedStates.add(new State(start, jointAction));
+            return expandedStates;
+        }
+        for (Action action : startActions[agent]) {
+            Arrays.fill(jointAction, agent + 1, numOfAgents, Action.NoOp);
+            jointAction[agent] = action;
+            int nextAgent = assignForcedActions(startActions, jointAction, agent + 1);
+            if (StateExpandUtils.isConflicting(start, jointAction)) {
+                continue;
+            }
+            State child = new State(start, jointAction);
+            if (nextAgent < numOfAgents) {
+                child.assignedAgents = nextAgent;
+                child.applicableActions = startActions;
+                for (int assigned = 0; assigned < nextAgent; assigned++) {
+                    int startCell = start.agentRows[assigned] * MAP_COLS + start.agentCols[assigned];
+                    child.decompositionKey ^= Long.rotateLeft(ZOBRIST_KEYS[assigned][startCell], 1 + jointAction[assigned].ordinal());
+                }
+            }
+            expandedStates.add(child);
+        }
+
+        Collections.shuffle(expandedStates, State.RNG);
+        return expandedStates;
+    }
+
+    /*
+        Assigns the single applicable action (NoOp) of the agents from the agent on which have no other one,
+        returns the first agent with a choice or numOfAgents. Such an agent doesn't branch, so it gets no
+        intermediate state of its own.
+     */
+    private int assignForcedActions(Action[][] startActions, Action[] jointAction, int agent) {
+        while (agent < numOfAgents && startActions[agent].length == 1) {
+            jointAction[agent] = startActions[agent][0];
+            agent++;
+        }
+        return agent;
+    }
+
+    /*
+        Returns true for the intermediate states of the operator decomposition, see getDecomposedStates()
+     */
+    public boolean isIntermediate() {
+        return assignedAgents > 0;
+    }
+
+    /*
+        Number of the agents whose actions are assigned in an intermediate state, 0 for the regular states
+     */
+    public int getAssignedAgents() {
+        return assignedAgents;
+    }
+
     public Action[][] extractPlan() {
         Action[][] plan = new Action[this.g][];
         State state = this;
@@ -137,30 +446,93 @@ public class State {
         return plan;
     }
 
-    @Override
-    public int hashCode() {
-        if (this.hash == 0) {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + Arrays.hashCode(this.AGENT_COLORS);
-            result = prime * result + Arrays.hashCode(this.BOX_COLORS);
-            result = prime * result + Arrays.deepHashCode(this.WALLS);
-            result = prime * result + Arrays.deepHashCode(this.GOALS);
-            result = prime * result + Arrays.hashCode(this.agentRows);
-            result = prime * result + Arrays.hashCode(this.agentCols);
-            for (int row = 0; row < this.boxes.length; ++row) {
-                for (int col = 0; col < this.boxes[row].length; ++col) {
-                    char c = this.boxes[row][col];
-                    if (c != 0) {
-                        result = prime * result + (row * this.boxes[row].length + col) * c;
-                    }
-                }
+    /*
+        64-bit Zobrist key of the agents and boxes, maintained incrementally. The key of an intermediate state
+        also covers the start cells and actions of its assigned agents.
+     */
+    public long getKey() {
+        return this.key ^ this.decompositionKey;
+    }
+
+    /*
+        Number of ints taken by pack(...): the cell of each agent, the packed boxes and, for an intermediate state,
+        the start cell and the action of each assigned agent
+     */
+    public int getPackedSize() {
+        return numOfAgents + boxes.length + 2 * assignedAgents;
+    }
+
+    /*
+        Writes the agents and boxes of the state to packed[offset, offset + getPackedSize())
+     */
+    public void pack(int[] packed, int offset) {
+        for (int agent = 0; agent < numOfAgents; agent++) {
+            packed[offset + agent] = agentRows[agent] * MAP_COLS + agentCols[agent];
+        }
+        System.arraycopy(boxes, 0, packed, offset + numOfAgents, boxes.length);
+        offset += numOfAgents + boxes.length;
+        for (int agent = 0; agent < assignedAgents; agent++) {
+            packed[offset + 2 * agent] = parent.agentRows[agent] * MAP_COLS + parent.agentCols[agent];
+            packed[offset + 2 * agent + 1] = jointAction[agent].ordinal();
+        }
+    }
+
+    /*
+        Returns a copy of this state (without the parent) with g and the agents and boxes of packed[offset, ...),
+        see pack(...). The packed state must have the same number of agents and boxes and be a regular state.
+     */
+    public State unpack(int[] packed, int offset, int g) {
+        State state = new State(this, g);
+        for (int agent = 0; agent < numOfAgents; agent++) {
+            int cell = packed[offset + agent];
+            state.moveAgent(agent, cell / MAP_COLS, cell % MAP_COLS);
+        }
+        offset += numOfAgents;
+        state.boxes = Arrays.copyOfRange(packed, offset, offset + boxes.length);
+        state.sharedBoxes = false;
+        for (int i = 0; i < boxes.length; i++) {
+            state.key ^= getBoxKey(boxes[i] >>> LETTER_BITS, (char) (boxes[i] & LETTER_MASK))
+                    ^ getBoxKey(state.boxes[i] >>> LETTER_BITS, (char) (state.boxes[i] & LETTER_MASK));
+        }
+        return state;
+    }
+
+    /*
+        Returns true if packed[offset, ...) holds the agents and boxes of this state, see pack(...)
+     */
+    public boolean matchesPacked(int[] packed, int offset) {
+        for (int agent = 0; agent < numOfAgents; agent++) {
+            if (packed[offset + agent] != agentRows[agent] * MAP_COLS + agentCols[agent]) {
+                return false;
+            }
+        }
+        offset += numOfAgents;
+        for (int i = 0; i < boxes.length; i++) {
+            if (packed[offset + i] != boxes[i]) {
+                return false;
+            }
+        }
+        offset += boxes.length;
+        for (int agent = 0; agent < assignedAgents; agent++) {
+            if (packed[offset + 2 * agent] != parent.agentRows[agent] * MAP_COLS + parent.agentCols[agent]
+                    || packed[offset + 2 * agent + 1] != jointAction[agent].ordinal()) {
+                return false;
             }
-            this.hash = result;
         }
-        return this.hash;
+        return true;
     }
 
+    @Override
+    public int hashCode() {
+        long key = this.getKey();
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /*
+        The walls, goals and colors are static, only the agents and boxes are compared. An intermediate state of the
+        operator decomposition is also identified by the start cells and actions of its assigned agents, as in
+        getKey() and pack(...), so it never equals a regular state.
+     */
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -173,22 +545,30 @@ public class State {
             return false;
         }
         State other = (State) obj;
-        return Arrays.equals(this.agentRows, other.agentRows) &&
-                Arrays.equals(this.agentCols, other.agentCols) &&
-                Arrays.equals(this.AGENT_COLORS, other.AGENT_COLORS) &&
-                Arrays.deepEquals(this.WALLS, other.WALLS) &&
-                Arrays.deepEquals(this.boxes, other.boxes) &&
-                Arrays.equals(this.BOX_COLORS, other.BOX_COLORS) &&
-                Arrays.deepEquals(this.GOALS, other.GOALS);
+        if (this.getKey() != other.getKey() || this.assignedAgents != other.assignedAgents ||
+                !Arrays.equals(this.agentRows, other.agentRows) ||
+                !Arrays.equals(this.agentCols, other.agentCols) ||
+                !Arrays.equals(this.boxes, other.boxes)) {
+            return false;
+        }
+        for (int agent = 0; agent < this.assignedAgents; agent++) {
+            if (this.parent.agentRows[agent] != other.parent.agentRows[agent] ||
+                    this.parent.agentCols[agent] != other.parent.agentCols[agent] ||
+                    this.jointAction[agent] != other.jointAction[agent]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
+        char[][] boxGrid = getBoxGrid();
         for (int row = 0; row < WALLS.length; row++) {
             for (int col = 0; col < WALLS[row].length; col++) {
-                if (this.boxes[row][col] > 0) {
-                    s.append(this.boxes[row][col]);
+                if (boxGrid[row][col] > 0) {
+                    s.append(boxGrid[row][col]);
                 } else if (WALLS[row][col]) {
                     s.append("+");
                 } else if (StateUtils.agentAt(this, row, col) != 0) {
@@ -6,26 +6,25 @@ package searchclient;
 public class StateActionUtils {
 
     public static void move(State state, int agent, Action action) {
-        state.agentRows[agent] += action.agentRowDelta;
-        state.agentCols[agent] += action.agentColDelta;
+        state.moveAgent(agent, state.agentRows[agent] + action.agentRowDelta, state.agentCols[agent] + action.agentColDelta);
     }
 
+    /*
+        push(...) and pull(...) are copy-on-write, the boxes of the state are copied only if they are
+        still shared with its parent (see State.moveBox(...))
+     */
     public static void push(State state, int agent, Action action) {
         int newAgentRow = state.agentRows[agent] + action.agentRowDelta;
         int newAgentCol = state.agentCols[agent] + action.agentColDelta;
-        state.boxes[newAgentRow + action.boxRowDelta][newAgentCol + action.boxColDelta] = state.boxes[newAgentRow][newAgentCol];
-        state.boxes[newAgentRow][newAgentCol] = 0;
-        state.agentRows[agent] = newAgentRow;
-        state.agentCols[agent] = newAgentCol;
+        state.moveBox(newAgentRow, newAgentCol, newAgentRow + action.boxRowDelta, newAgentCol + action.boxColDelta);
+        state.moveAgent(agent, newAgentRow, newAgentCol);
     }
 
     public static void pull(State state, int agent, Action action) {
         int agentRow = state.agentRows[agent];
         int agentCol = state.agentCols[agent];
-        state.boxes[agentRow][agentCol] = state.boxes[agentRow - action.boxRowDelta][agentCol - action.boxColDelta];
-        state.boxes[agentRow - action.boxRowDelta][agentCol - action.boxColDelta] = 0;
-        state.agentRows[agent] += action.agentRowDelta;
-        state.agentCols[agent] += action.agentColDelta;
+        state.moveBox(agentRow - action.boxRowDelta, agentCol - action.boxColDelta, agentRow, agentCol);
+        state.moveAgent(agent, agentRow + action.agentRowDelta, agentCol + action.agentColDelta);
     }
 
     public static boolean isMoveApplicable(State state, int agent, Action action) {
@@ -7,12 +7,16 @@ import java.util.ArrayList;
  */
 public class StateExpandUtils {
 
-    public static  Action[][] getApplicableActions(State state) {
+    /*
+        pruneDeadCells - drop the pushes and pulls which move a box to one of its dead cells
+        (LevelMetadata.isDeadCell(...)). It has to be off if the searched goal state itself has a box on a dead cell.
+     */
+    public static  Action[][] getApplicableActions(State state, boolean pruneDeadCells) {
         Action[][] applicableActions = new Action[state.numOfAgents][];
         for (int agent = 0; agent < state.numOfAgents; ++agent) {
             ArrayList<Action> agentActions = new ArrayList<>(Action.values().length);
             for (Action action : Action.values()) {
-                if (isApplicable(state, agent, action)) {
+                if (isApplicable(state, agent, action) && !(pruneDeadCells && movesBoxToDeadCell(state, agent, action))) {
                     agentActions.add(action);
                 }
             }
@@ -89,6 +93,25 @@ public class StateExpandUtils {
         return false;
     }
 
+    private static boolean movesBoxToDeadCell(State state, int agent, Action action) {
+        int agentRow = state.agentRows[agent];
+        int agentCol = state.agentCols[agent];
+        switch (action.type) {
+            case Push: {
+                int boxRow = agentRow + action.agentRowDelta;
+                int boxCol = agentCol + action.agentColDelta;
+                char box = StateUtils.boxAt(state, boxRow, boxCol);
+                return LevelMetadata.isDeadCell(box, boxRow + action.boxRowDelta, boxCol + action.boxColDelta);
+            }
+            case Pull: {
+                char box = StateUtils.boxAt(state, agentRow - action.boxRowDelta, agentCol - action.boxColDelta);
+                return LevelMetadata.isDeadCell(box, agentRow, agentCol);
+            }
+            default:
+                return false;
+        }
+    }
+
     private static boolean isSameCoord(int[] rows, int[] cols, int agent1, int agent2) {
         return rows[agent1] == rows[agent2] && cols[agent1] == cols[agent2];
     }
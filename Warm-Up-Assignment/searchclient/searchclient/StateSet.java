@@ -0,0 +1,14 @@
+package searchclient;
+
+/*
+    Duplicate detection of the conflict searches (SearchUtils.aStarSearch(...)), see DuplicateDetection
+ */
+public interface StateSet {
+
+    /*
+        Adds the state, returns false if it has (probably, for the inexact sets) been added before
+     */
+    boolean add(State state);
+
+    int size();
+}
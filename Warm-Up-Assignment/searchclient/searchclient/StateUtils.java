@@ -35,7 +35,7 @@ public class StateUtils {
     }
 
     public static boolean isBoxInGoalState(State state, int row, int col) {
-        return State.GOALS[row][col] == state.boxes[row][col];
+        return State.GOALS[row][col] == state.boxAt(row, col);
     }
 
     public static boolean isAgentInGoalState(State state, char agent) {
@@ -88,7 +88,7 @@ public class StateUtils {
     }
 
     public static char boxAt(State state, int row, int col) {
-        return state.boxes[row][col];
+        return state.boxAt(row, col);
     }
 
     public static boolean isOutOfBounds(int row, int col) {